@@ -0,0 +1,158 @@
+package dev.amsam0.voicechatdiscord;
+
+import de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.amsam0.voicechatdiscord.Core.platform;
+
+/**
+ * Reusable StaticAudioChannels, pooled per player connection and level.
+ * Fan-out rebuilds take channels from here instead of creating them, and channels of Discord users or
+ * players that left go back here (flushed and with their category cleared) instead of being dropped.
+ * Spare channels are created ahead of time on the fan-out builder thread, so a new speaker or player
+ * usually gets a channel without waiting for Simple Voice Chat to create one.
+ * Pools are discarded when the player disconnects or changes level.
+ */
+final class AudioChannelPool {
+    // Idle channels kept ready for each player after every acquire
+    private static final int SPARE_CHANNELS = 1;
+    // Idle channels kept per player; extra released channels are dropped
+    private static final int MAX_IDLE_CHANNELS = 8;
+
+    private static final Map<UUID, Pool> pools = new ConcurrentHashMap<>();
+
+    private AudioChannelPool() {
+    }
+
+    private static final class Pool {
+        private final Object level;
+        private final ArrayDeque<StaticAudioChannel> idle = new ArrayDeque<>();
+        private boolean refillQueued = false;
+
+        private Pool(Object level) {
+            this.level = level;
+        }
+    }
+
+    /**
+     * Takes an idle channel for the player, or creates one if none is ready, and sets its category.
+     * @return the channel, or null if the player has no connection or level
+     */
+    static StaticAudioChannel acquire(UUID playerId, String categoryId) {
+        var connection = Core.api.getConnectionOf(playerId);
+        var player = connection != null ? connection.getPlayer() : null;
+        var level = player != null ? player.getServerLevel() : null;
+        if (level == null) return null;
+
+        StaticAudioChannel channel = null;
+        Pool pool = poolFor(playerId, level);
+        synchronized (pool) {
+            while (channel == null && !pool.idle.isEmpty()) {
+                var idle = pool.idle.poll();
+                if (!idle.isClosed()) channel = idle;
+            }
+        }
+        if (channel == null) {
+            channel = Core.api.createStaticAudioChannel(UUID.randomUUID(), level, connection);
+            if (channel == null) return null;
+            platform.debug("[AudioChannelPool] Created StaticAudioChannel for player " + playerId + " (pool empty)");
+        }
+        channel.setCategory(categoryId);
+        prewarm(playerId, SPARE_CHANNELS);
+        return channel;
+    }
+
+    /**
+     * Returns a channel that no longer carries audio to the player's pool.
+     */
+    static void release(UUID playerId, StaticAudioChannel channel) {
+        if (channel == null || channel.isClosed()) return;
+        Pool pool = pools.get(playerId);
+        if (pool == null) return;
+        channel.flush();
+        channel.setCategory(null);
+        synchronized (pool) {
+            if (pool.idle.size() < MAX_IDLE_CHANNELS) pool.idle.add(channel);
+        }
+    }
+
+    /**
+     * Returns all of a player's channels to their pool.
+     */
+    static void releaseAll(UUID playerId, Map<Long, StaticAudioChannel> channels) {
+        if (channels == null) return;
+        for (var channel : channels.values()) {
+            release(playerId, channel);
+        }
+    }
+
+    /**
+     * Creates channels on the fan-out builder thread until the player has at least {@code count} idle ones.
+     */
+    static void prewarm(UUID playerId, int count) {
+        int target = Math.min(count, MAX_IDLE_CHANNELS);
+        if (target <= 0) return;
+        Pool existing = pools.get(playerId);
+        if (existing != null) {
+            synchronized (existing) {
+                if (existing.idle.size() >= target || existing.refillQueued) return;
+                existing.refillQueued = true;
+            }
+        }
+        AudioFanout.BUILDER.execute(() -> {
+            try {
+                fill(playerId, target);
+            } catch (Throwable t) {
+                platform.error("[AudioChannelPool] Failed to pre-create StaticAudioChannels for player " + playerId, t);
+            } finally {
+                Pool pool = pools.get(playerId);
+                if (pool != null) {
+                    synchronized (pool) {
+                        pool.refillQueued = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private static void fill(UUID playerId, int target) {
+        var connection = Core.api.getConnectionOf(playerId);
+        var player = connection != null ? connection.getPlayer() : null;
+        var level = player != null ? player.getServerLevel() : null;
+        if (level == null) return;
+        Pool pool = poolFor(playerId, level);
+        while (true) {
+            synchronized (pool) {
+                if (pool.idle.size() >= target) return;
+            }
+            var channel = Core.api.createStaticAudioChannel(UUID.randomUUID(), level, connection);
+            if (channel == null) {
+                platform.error("[AudioChannelPool] Failed to pre-create StaticAudioChannel for player " + playerId);
+                return;
+            }
+            synchronized (pool) {
+                pool.idle.add(channel);
+            }
+        }
+    }
+
+    private static Pool poolFor(UUID playerId, Object level) {
+        return pools.compute(playerId, (k, pool) -> pool != null && Objects.equals(pool.level, level) ? pool : new Pool(level));
+    }
+
+    /**
+     * Drops a player's idle channels, e.g. after they disconnected.
+     */
+    static void discard(UUID playerId) {
+        pools.remove(playerId);
+    }
+
+    static void clear() {
+        pools.clear();
+    }
+}
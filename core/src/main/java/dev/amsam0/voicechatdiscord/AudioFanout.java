@@ -0,0 +1,278 @@
+package dev.amsam0.voicechatdiscord;
+
+import de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static dev.amsam0.voicechatdiscord.Core.platform;
+
+/**
+ * Immutable Discord -> Minecraft fan-out table for one group: one row of channels per speaker handle,
+ * holding that speaker's StaticAudioChannel for every player in the group.
+ * Tables are rebuilt off the dispatcher thread whenever players, their voice chat state, Discord users or
+ * speakers change,
+ * so the dispatcher only walks an array per packet and never creates channels.
+ * In mixing mode the table instead has a single row for the mixed stream, with one channel per player.
+ */
+final class AudioFanout {
+    static final AudioFanout EMPTY = new AudioFanout(null, new StaticAudioChannel[0][], new int[0][], null, null);
+    // Key of each player's mixed-stream channel in GroupManager.groupAudioChannels; never a Discord user ID
+    static final long MIXED_CHANNEL_KEY = -1L;
+
+    // Single daemon thread shared by all bots; rebuilds are short and coalesced per bot
+    static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DiscordAudioFanoutBuilder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Sends to large groups are split across this many workers; the dispatcher thread sends one part itself
+    private static final int SEND_WORKER_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    // Fewest channels worth handing to a worker
+    private static final int MIN_CHANNELS_PER_PART = 16;
+    // Part boundaries of a row sent by the dispatcher thread alone
+    private static final int[] SINGLE_PART = new int[0];
+
+    final UUID groupId;
+    private final StaticAudioChannel[][] rows;
+    // Start index of each part of the row with the same handle, ending with the row length; SINGLE_PART if not split
+    private final int[][] rowParts;
+    private final StaticAudioChannel[] mixedRow;
+    private final int[] mixedParts;
+
+    private AudioFanout(UUID groupId, StaticAudioChannel[][] rows, int[][] rowParts, StaticAudioChannel[] mixedRow, int[] mixedParts) {
+        this.groupId = groupId;
+        this.rows = rows;
+        this.rowParts = rowParts;
+        this.mixedRow = mixedRow;
+        this.mixedParts = mixedParts;
+    }
+
+    /**
+     * @return the channels for a speaker handle (or {@link SpeakerTable#MIXED}), or null if the table has no row for it
+     */
+    StaticAudioChannel[] row(int handle) {
+        if (handle == SpeakerTable.MIXED) return mixedRow;
+        return handle >= 0 && handle < rows.length ? rows[handle] : null;
+    }
+
+    /**
+     * Sends one Opus packet on every channel of the row for a speaker handle (or {@link SpeakerTable#MIXED}).
+     * Rows with at least {@code Core.parallelFanoutThreshold} channels were split into parts when the table was
+     * built, and all parts but the first go to the fan-out workers; either way this only returns once the packet
+     * went out on every channel, so a frame never overlaps the next one. Nothing is allocated per packet.
+     * @return whether any channel in the row was closed
+     */
+    boolean send(int handle, byte[] opusData) {
+        StaticAudioChannel[] row;
+        int[] parts;
+        if (handle == SpeakerTable.MIXED) {
+            row = mixedRow;
+            parts = mixedParts;
+        } else if (handle >= 0 && handle < rows.length) {
+            row = rows[handle];
+            parts = rowParts[handle];
+        } else {
+            return false;
+        }
+        if (row == null) return false;
+        if (parts.length < 3) return send(row, 0, row.length, opusData);
+        return SendWorkers.send(row, parts, opusData);
+    }
+
+    private static boolean send(StaticAudioChannel[] row, int from, int to, byte[] opusData) {
+        boolean sawClosed = false;
+        for (int i = from; i < to; i++) {
+            var channel = row[i];
+            if (channel.isClosed()) {
+                sawClosed = true;
+            } else {
+                channel.send(opusData);
+            }
+        }
+        return sawClosed;
+    }
+
+    /**
+     * Part boundaries for a row of {@code length} channels: the start of each part followed by the length, or
+     * {@link #SINGLE_PART} if the row is too small to be worth splitting.
+     */
+    private static int[] partsFor(int length) {
+        int threshold = Core.parallelFanoutThreshold;
+        int parts = Math.min(SEND_WORKER_COUNT + 1, length / MIN_CHANNELS_PER_PART);
+        if (threshold <= 0 || length < threshold || parts < 2) return SINGLE_PART;
+        int partSize = (length + parts - 1) / parts;
+        int[] bounds = new int[parts + 1];
+        for (int i = 0; i < parts; i++) {
+            bounds[i] = Math.min(length, i * partSize);
+        }
+        bounds[parts] = length;
+        return bounds;
+    }
+
+    /**
+     * Long-lived threads that each send one part of a large row. The sender hands every worker its part through
+     * plain fields, published by a volatile flag, and parks until the last worker is done. Started the first
+     * time a row is split.
+     */
+    private static final class SendWorkers {
+        private static final SendWorker[] WORKERS = new SendWorker[SEND_WORKER_COUNT];
+        private static final AtomicInteger remaining = new AtomicInteger();
+        private static volatile Thread sender;
+
+        static {
+            for (int i = 0; i < WORKERS.length; i++) {
+                WORKERS[i] = new SendWorker();
+                var thread = new Thread(WORKERS[i], "DiscordAudioFanout-" + i);
+                thread.setDaemon(true);
+                WORKERS[i].thread = thread;
+                thread.start();
+            }
+        }
+
+        private SendWorkers() {
+        }
+
+        // Only one row is split across the workers at a time; normally only the dispatcher thread sends
+        static synchronized boolean send(StaticAudioChannel[] row, int[] parts, byte[] opusData) {
+            int workerParts = parts.length - 2;
+            sender = Thread.currentThread();
+            remaining.set(workerParts);
+            for (int i = 0; i < workerParts; i++) {
+                var worker = WORKERS[i];
+                worker.row = row;
+                worker.from = parts[i + 1];
+                worker.to = parts[i + 2];
+                worker.opusData = opusData;
+                worker.pending = true;
+                LockSupport.unpark(worker.thread);
+            }
+            boolean sawClosed = AudioFanout.send(row, parts[0], parts[1], opusData);
+            while (remaining.get() != 0) {
+                LockSupport.park(SendWorkers.class);
+            }
+            for (int i = 0; i < workerParts; i++) {
+                sawClosed |= WORKERS[i].sawClosed;
+            }
+            return sawClosed;
+        }
+    }
+
+    private static final class SendWorker implements Runnable {
+        private Thread thread;
+        // The part to send; written by the sender before it sets pending
+        private StaticAudioChannel[] row;
+        private int from;
+        private int to;
+        private byte[] opusData;
+        private boolean sawClosed;
+        private volatile boolean pending = false;
+
+        @Override
+        public void run() {
+            while (true) {
+                while (!pending) {
+                    LockSupport.park(this);
+                }
+                boolean closed = false;
+                try {
+                    closed = AudioFanout.send(row, from, to, opusData);
+                } catch (Throwable t) {
+                    platform.error("Error sending Discord audio on a fan-out worker", t);
+                }
+                sawClosed = closed;
+                row = null;
+                opusData = null;
+                pending = false;
+                if (SendWorkers.remaining.decrementAndGet() == 0) {
+                    LockSupport.unpark(SendWorkers.sender);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a table for the group, taking any missing (or replacing closed) StaticAudioChannels from
+     * {@link AudioChannelPool} into GroupManager.groupAudioChannels. Rows are only built for speakers the
+     * dispatcher has heard, so channels exist for (player, speaking Discord user) pairs rather than every
+     * pair. A mixed table only has the mixed row.
+     */
+    static AudioFanout build(UUID groupId, SpeakerTable speakers, Set<Integer> heardSpeakers, Long discordChannelId, boolean mixed) {
+        var players = GroupManager.groupPlayerMap.get(groupId);
+        if (players == null || players.isEmpty()) {
+            return new AudioFanout(groupId, new StaticAudioChannel[0][], new int[0][], null, null);
+        }
+        // Players with voice chat disabled or disconnected get no channels, so nothing is encrypted and sent
+        // for packets they cannot hear. Their pooled channels are kept for when they come back.
+        var listeners = new ArrayList<UUID>(players.size());
+        for (var player : players) {
+            if (GroupManager.canHearDiscordAudio(player.getUuid())) listeners.add(player.getUuid());
+        }
+        if (listeners.size() < players.size()) {
+            platform.debug("[AudioFanout] Skipping " + (players.size() - listeners.size()) + " player(s) that cannot hear voice chat in group " + groupId + " (vcid=" + discordChannelId + ")");
+        }
+        var groupChannels = GroupManager.groupAudioChannels.computeIfAbsent(groupId, k -> new ConcurrentHashMap<>());
+        if (mixed) {
+            var mixedRow = new ArrayList<StaticAudioChannel>(listeners.size());
+            for (var playerId : listeners) {
+                var playerChannels = groupChannels.computeIfAbsent(playerId, k -> new ConcurrentHashMap<>());
+                var channel = channelFor(groupId, playerId, playerChannels, MIXED_CHANNEL_KEY, "Discord (mixed)", discordChannelId);
+                if (channel != null) mixedRow.add(channel);
+            }
+            var mixedChannels = mixedRow.toArray(new StaticAudioChannel[0]);
+            return new AudioFanout(groupId, new StaticAudioChannel[0][], new int[0][], mixedChannels, partsFor(mixedChannels.length));
+        }
+        int handleCount = speakers.capacity();
+        StaticAudioChannel[][] rows = new StaticAudioChannel[handleCount][];
+        int[][] rowParts = new int[handleCount][];
+        for (int handle = 0; handle < handleCount; handle++) {
+            long discordUserId = speakers.userId(handle);
+            if (handle != SpeakerTable.UNKNOWN && discordUserId == 0L) continue;
+            // Channels are only created for speakers that were actually heard, so silent listeners in a busy
+            // Discord channel cost nothing
+            if (!heardSpeakers.contains(handle)) continue;
+
+            String username = speakers.name(handle);
+            var row = new ArrayList<StaticAudioChannel>(listeners.size());
+            for (var playerId : listeners) {
+                var playerChannels = groupChannels.computeIfAbsent(playerId, k -> new ConcurrentHashMap<>());
+                var channel = channelFor(groupId, playerId, playerChannels, discordUserId, username, discordChannelId);
+                if (channel != null) row.add(channel);
+            }
+            rows[handle] = row.toArray(new StaticAudioChannel[0]);
+            rowParts[handle] = partsFor(rows[handle].length);
+        }
+        return new AudioFanout(groupId, rows, rowParts, null, null);
+    }
+
+    private static StaticAudioChannel channelFor(UUID groupId, UUID playerId, Map<Long, StaticAudioChannel> playerChannels, long discordUserId, String username, Long discordChannelId) {
+        var channel = playerChannels.get(discordUserId);
+        if (channel != null && channel.isClosed()) {
+            // A closed channel can never deliver audio again; drop it so it gets recreated below.
+            playerChannels.remove(discordUserId, channel);
+            channel = null;
+        }
+        if (channel != null) return channel;
+
+        if (Core.api.getGroup(groupId) == null) {
+            platform.error("[AudioFanout] Cannot create StaticAudioChannel: missing group for player " + playerId + " (vcid=" + discordChannelId + ")");
+            return null;
+        }
+        var newChannel = AudioChannelPool.acquire(playerId, DiscordBot.discordUserCategoryMap.get(discordUserId));
+        if (newChannel == null) {
+            platform.error("[AudioFanout] Failed to get StaticAudioChannel for player " + playerId + ", Discord user '" + username + "' (ID: " + discordUserId + ") in group " + groupId + " (vcid=" + discordChannelId + ")");
+            return null;
+        }
+        playerChannels.put(discordUserId, newChannel);
+        platform.debug("[AudioFanout] Assigned StaticAudioChannel for player " + playerId + ", Discord user '" + username + "' (ID: " + discordUserId + ") in group " + groupId + " (vcid=" + discordChannelId + ")");
+        return newChannel;
+    }
+}
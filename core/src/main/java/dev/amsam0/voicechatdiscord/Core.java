@@ -30,6 +30,17 @@ public final class Core {
     public static long permanentDiscordChannelId = 0;
     public static String permanentDiscordChannelName = "MC General";
     public static String permanentMcGroupName = "General";
+    // Per-speaker Discord receive queue: policy (see RECEIVE_DROP_POLICIES), depth in 20ms frames, max age for expire
+    public static String receiveDropPolicy = "drop-oldest";
+    public static int receiveQueueFrames = 10;
+    public static int receiveMaxAgeMs = 200;
+    // Discord speakers x group players at which Discord audio is mixed into one stream per player; 0 disables
+    public static int discordMixingThreshold = 120;
+    // Groups with at least this many players send each Discord audio packet from several fan-out workers; 0 disables
+    public static int parallelFanoutThreshold = 64;
+    // Lower bound (in 20ms frames) of the adaptive Discord receive delay; 0 keeps the fixed 140ms delay
+    public static int adaptivePlayoutMinFrames = 0;
+    private static final List<String> RECEIVE_DROP_POLICIES = List.of("drop-oldest", "drop-newest", "expire");
 
     private static native void initializeNatives();
 
@@ -37,6 +48,10 @@ public final class Core {
 
     private static native void shutdownNatives();
 
+    private static native void setReceiveQueuePolicy(int policy, int maxFrames, int maxAgeMs);
+
+    private static native void setAdaptivePlayout(int minFrames);
+
     public static void enable() {
         // This should happen first
         try {
@@ -55,6 +70,7 @@ public final class Core {
         platform.info("Shutting down " + toShutdown + " bot" + (toShutdown != 1 ? "s" : ""));
 
         clearBots();
+        DiscordAudioDispatcher.shutdown();
 
         platform.info("Successfully shutdown " + toShutdown + " bot" + (toShutdown != 1 ? "s" : ""));
 
@@ -100,6 +116,31 @@ public final class Core {
                 "# 2: Most debug logging (can be spammy)",
                 "# 3 (or higher): All debug logging (very spammy)",
                 "debug_level: 0",
+                "",
+                "# How Discord audio is dropped when one speaker sends faster than it can be delivered.",
+                "# Every Discord speaker gets their own bounded queue, so a bursty speaker only loses their own audio.",
+                "# drop-oldest: drop the speaker's oldest queued frame",
+                "# drop-newest: drop the incoming frame",
+                "# expire: drop frames older than discord_receive_max_age_ms (and the oldest when the queue is full)",
+                "discord_receive_drop_policy: drop-oldest",
+                "# Maximum queued frames per speaker (each frame is 20ms of audio)",
+                "discord_receive_queue_frames: 10",
+                "discord_receive_max_age_ms: 200",
+                "",
+                "# Discord audio is buffered for 7 frames (140ms) to smooth out network jitter.",
+                "# Set this to 1-6 to instead adapt each speaker's buffer to their measured jitter, down to this many frames.",
+                "# Takes effect the next time a bot joins its voice channel. 0 keeps the fixed buffer.",
+                "discord_adaptive_playout_min_frames: 0",
+                "",
+                "# Large groups: once (Discord users in the channel) x (players in the group) reaches this number,",
+                "# Discord users are mixed into a single audio stream per player instead of one stream per user.",
+                "# This greatly reduces voice chat traffic, but per-user Discord volume controls stop applying.",
+                "# Set to 0 to never mix.",
+                "discord_mixing_threshold: 120",
+                "",
+                "# Groups with at least this many players send each Discord audio packet from several threads,",
+                "# so one slow connection does not hold up everyone else. Set to 0 to always send from one thread.",
+                "discord_parallel_fanout_threshold: 64",
                 ""
             );
             try (java.io.FileWriter writer = new java.io.FileWriter(configFile)) {
@@ -220,6 +261,49 @@ public final class Core {
         } catch (ClassCastException e) {
             platform.error("Please make sure the debug_level option is a valid integer");
         }
+
+        Object dropPolicyObj = config.get("discord_receive_drop_policy");
+        if (dropPolicyObj instanceof String s && RECEIVE_DROP_POLICIES.contains(s.trim().toLowerCase())) {
+            receiveDropPolicy = s.trim().toLowerCase();
+        } else if (dropPolicyObj != null) {
+            platform.error("discord_receive_drop_policy must be one of " + String.join(", ", RECEIVE_DROP_POLICIES) + ". Using previous value '" + receiveDropPolicy + "'");
+        }
+        Object queueFramesObj = config.get("discord_receive_queue_frames");
+        if (queueFramesObj instanceof Number n && n.intValue() > 0) {
+            receiveQueueFrames = n.intValue();
+        } else if (queueFramesObj != null) {
+            platform.error("discord_receive_queue_frames must be a positive integer. Using previous value " + receiveQueueFrames);
+        }
+        Object maxAgeObj = config.get("discord_receive_max_age_ms");
+        if (maxAgeObj instanceof Number n && n.intValue() >= 20) {
+            receiveMaxAgeMs = n.intValue();
+        } else if (maxAgeObj != null) {
+            platform.error("discord_receive_max_age_ms must be an integer of at least 20. Using previous value " + receiveMaxAgeMs);
+        }
+        setReceiveQueuePolicy(RECEIVE_DROP_POLICIES.indexOf(receiveDropPolicy), receiveQueueFrames, receiveMaxAgeMs);
+        platform.debug("Discord receive queue: " + receiveDropPolicy + ", " + receiveQueueFrames + " frames, " + receiveMaxAgeMs + "ms max age");
+
+        Object adaptivePlayoutObj = config.get("discord_adaptive_playout_min_frames");
+        if (adaptivePlayoutObj instanceof Number n && n.intValue() >= 0 && n.intValue() <= 6) {
+            adaptivePlayoutMinFrames = n.intValue();
+        } else if (adaptivePlayoutObj != null) {
+            platform.error("discord_adaptive_playout_min_frames must be an integer from 0 to 6. Using previous value " + adaptivePlayoutMinFrames);
+        }
+        setAdaptivePlayout(adaptivePlayoutMinFrames);
+
+        Object mixingThresholdObj = config.get("discord_mixing_threshold");
+        if (mixingThresholdObj instanceof Number n && n.intValue() >= 0) {
+            discordMixingThreshold = n.intValue();
+        } else if (mixingThresholdObj != null) {
+            platform.error("discord_mixing_threshold must be a non-negative integer. Using previous value " + discordMixingThreshold);
+        }
+
+        Object parallelFanoutObj = config.get("discord_parallel_fanout_threshold");
+        if (parallelFanoutObj instanceof Number n && n.intValue() >= 0) {
+            parallelFanoutThreshold = n.intValue();
+        } else if (parallelFanoutObj != null) {
+            platform.error("discord_parallel_fanout_threshold must be a non-negative integer. Using previous value " + parallelFanoutThreshold);
+        }
     }
 
     /**
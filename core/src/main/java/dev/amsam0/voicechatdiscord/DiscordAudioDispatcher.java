@@ -0,0 +1,146 @@
+package dev.amsam0.voicechatdiscord;
+
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static dev.amsam0.voicechatdiscord.Core.platform;
+
+/**
+ * Single thread that bridges Discord audio for every bot. It blocks on one native readiness
+ * primitive shared by all bots' audio rings and dispatches new records to each bot's group,
+ * so the number of bots no longer decides the number of threads or idle wakeups.
+ * The wait has no timeout: while no Discord audio arrives (e.g. no Discord users in any bridged
+ * channel) the thread stays parked. Only while a group's {@link DiscordAudioPacer} holds frames does
+ * it wait until the next one is due.
+ */
+final class DiscordAudioDispatcher {
+    /**
+     * A bot's audio ring bound to the group it is bridged to.
+     */
+    static final class Registration {
+        final DiscordBot bot;
+        final UUID groupId;
+        final DiscordAudioRing ring;
+        final DiscordAudioPacer pacer;
+        volatile boolean active = true;
+
+        private Registration(DiscordBot bot, UUID groupId, DiscordAudioRing ring) {
+            this.bot = bot;
+            this.groupId = groupId;
+            this.ring = ring;
+            this.pacer = new DiscordAudioPacer((speaker, opus) -> bot.sendPacedDiscordAudio(groupId, speaker, opus));
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+    private static final Object threadLock = new Object();
+    // The current dispatcher; a thread that is no longer this one stops at its next check
+    private static Thread thread;
+
+    // Blocks until any ring publishes audio, the dispatcher is woken, or timeoutNanos elapse (<= 0 waits
+    // indefinitely); returns the new readiness generation
+    private static native long _awaitDiscordAudio(long lastGeneration, long timeoutNanos);
+
+    // Wakes the dispatcher out of _awaitDiscordAudio
+    private static native void _wakeDiscordAudioDispatcher();
+
+    static Registration register(DiscordBot bot, UUID groupId, DiscordAudioRing ring) {
+        Registration registration = new Registration(bot, groupId, ring);
+        registrations.add(registration);
+        ensureStarted();
+        return registration;
+    }
+
+    /**
+     * Stops dispatching to a registration. Returns only once no dispatch for it is in flight,
+     * so the bot's native memory can be freed right after.
+     */
+    static void unregister(Registration registration) {
+        registration.active = false;
+        registrations.remove(registration);
+        synchronized (registration) {
+            // Wait for an in-flight dispatch to finish
+        }
+    }
+
+    private static void ensureStarted() {
+        synchronized (threadLock) {
+            if (thread != null && thread.isAlive()) return;
+            thread = new Thread(DiscordAudioDispatcher::run, "DiscordAudioDispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread; it is restarted by the next registration.
+     */
+    static void shutdown() {
+        Thread toJoin;
+        synchronized (threadLock) {
+            toJoin = thread;
+            thread = null;
+        }
+        if (toJoin != null) {
+            try {
+                _wakeDiscordAudioDispatcher();
+                toJoin.join(500);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whether the calling thread is still the dispatcher. A thread replaced by {@link #shutdown()} and a
+     * later {@link #ensureStarted()} sees false even though a dispatcher is running again.
+     */
+    private static boolean isCurrentDispatcher() {
+        synchronized (threadLock) {
+            return thread == Thread.currentThread();
+        }
+    }
+
+    private static void run() {
+        long generation = 0L;
+        long waitNanos = 0L;
+        while (isCurrentDispatcher()) {
+            try {
+                generation = _awaitDiscordAudio(generation, waitNanos);
+            } catch (Throwable t) {
+                platform.error("Error waiting for Discord audio", t);
+                break;
+            }
+            waitNanos = 0L;
+            for (Registration registration : registrations) {
+                // Pacers are only touched by the current dispatcher
+                if (!isCurrentDispatcher()) return;
+                long due = dispatch(registration);
+                if (due > 0L && (waitNanos == 0L || due < waitNanos)) waitNanos = due;
+            }
+        }
+    }
+
+    /**
+     * Moves newly published records into the registration's pacer and sends the frames that are due.
+     * @return nanoseconds until its next frame is due, or 0 if none are queued
+     */
+    private static long dispatch(Registration registration) {
+        synchronized (registration) {
+            if (!registration.active) return 0L;
+            DiscordAudioRing ring = registration.ring;
+            long writePos = ring.writePosition();
+            if (writePos != ring.readPosition()) {
+                try {
+                    ring.publishedUpTo(writePos);
+                    registration.bot.dispatchDiscordAudio(registration.groupId, ring, registration.pacer);
+                } catch (Throwable t) {
+                    platform.error("Error dispatching Discord audio for bot (vcid=" + registration.bot.getDiscordChannelId() + ")", t);
+                } finally {
+                    ring.commit();
+                }
+            }
+            return registration.pacer.drain(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package dev.amsam0.voicechatdiscord;
+
+/**
+ * Re-times one group's Discord audio onto a steady 20ms schedule before it is sent to Simple Voice Chat.
+ * Records arrive from the audio ring in batches (several VoiceTicks at once after the dispatcher or the
+ * receive path stalled); each tick is one frame and frames leave at most one per 20ms, measured with
+ * {@link System#nanoTime()}. After a stall the backlog is cut to {@link #TARGET_FRAMES} by dropping the
+ * oldest frames, so listeners hear slightly less audio instead of stale audio played back-to-back.
+ * The end of a speaker's burst travels with the last frame queued before it, and once nothing is left
+ * queued it also resets the schedule so the next burst starts fresh.
+ * All methods except the metric getters must be called on the dispatcher thread.
+ */
+final class DiscordAudioPacer {
+    /**
+     * Receives paced audio, one record at a time.
+     */
+    interface Sink {
+        /**
+         * @param opus the Opus packet, or null once the speaker's burst of speech is over
+         */
+        void send(int speaker, byte[] opus);
+    }
+
+    static final long FRAME_NANOS = 20_000_000L;
+    // Frames allowed to stay queued after catching up; bounds the latency added by a stall to 60ms
+    private static final int TARGET_FRAMES = 3;
+    // Records (not frames) buffered; a full pacer drops its oldest frame
+    private static final int CAPACITY = 256;
+    // Weight of each new sample in the smoothed jitter, as in RTP interarrival jitter
+    private static final int JITTER_SMOOTHING = 16;
+
+    private final Sink sink;
+    private final int[] speakers = new int[CAPACITY];
+    private final int[] ticks = new int[CAPACITY];
+    private final byte[][] payloads = new byte[CAPACITY][];
+    private int head = 0;
+    private int size = 0;
+    private int queuedFrames = 0;
+
+    private boolean scheduled = false;
+    private long nextDueNanos;
+    private long lastSentNanos;
+
+    // Written only by the dispatcher thread, read by /dvcgroup stats
+    private volatile long framesSent = 0L;
+    private volatile long framesDropped = 0L;
+    private volatile long jitterNanos = 0L;
+    private volatile long maxJitterNanos = 0L;
+    private volatile long fanoutNanos = 0L;
+    private volatile long maxFanoutNanos = 0L;
+
+    DiscordAudioPacer(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Queues one record read from the audio ring.
+     */
+    void add(int tick, int speaker, byte[] opus) {
+        if (size == CAPACITY) dropOldestFrame();
+        boolean newFrame = size == 0 || ticks[(head + size - 1) % CAPACITY] != tick;
+        int index = (head + size) % CAPACITY;
+        speakers[index] = speaker;
+        ticks[index] = tick;
+        payloads[index] = opus;
+        size++;
+        if (newFrame) queuedFrames++;
+    }
+
+    /**
+     * Queues the end of a speaker's burst right behind the newest queued frame, or delivers it now if
+     * nothing is queued.
+     */
+    void addEndOfBurst(int speaker) {
+        if (size == CAPACITY) dropOldestFrame();
+        if (size == 0) {
+            endBurst(speaker);
+            resetSchedule();
+            return;
+        }
+        int index = (head + size) % CAPACITY;
+        speakers[index] = speaker;
+        ticks[index] = ticks[(head + size - 1) % CAPACITY];
+        payloads[index] = null;
+        size++;
+    }
+
+    /**
+     * Sends every frame that is due.
+     * @return nanoseconds until the next queued frame is due, or 0 if nothing is queued
+     */
+    long drain(long now) {
+        if (size == 0) return 0L;
+        if (!scheduled || now - nextDueNanos > FRAME_NANOS) {
+            // First audio after silence, or we fell more than a frame behind: restart the schedule
+            // from now rather than bursting to catch up.
+            nextDueNanos = now;
+            scheduled = true;
+        }
+        while (queuedFrames > TARGET_FRAMES) {
+            dropOldestFrame();
+        }
+        while (size > 0 && now - nextDueNanos >= 0) {
+            sendFrame(now);
+            nextDueNanos += FRAME_NANOS;
+        }
+        return size > 0 ? Math.max(1L, nextDueNanos - now) : 0L;
+    }
+
+    private void sendFrame(long now) {
+        long start = System.nanoTime();
+        int tick = ticks[head];
+        boolean burstEnded = false;
+        while (size > 0 && ticks[head] == tick) {
+            byte[] opus = payloads[head];
+            payloads[head] = null;
+            int speaker = speakers[head];
+            head = (head + 1) % CAPACITY;
+            size--;
+            if (opus == null) {
+                endBurst(speaker);
+                burstEnded = true;
+                continue;
+            }
+            try {
+                sink.send(speaker, opus);
+            } catch (Throwable t) {
+                Core.platform.error("Error sending paced Discord audio", t);
+            }
+        }
+        queuedFrames--;
+        framesSent++;
+
+        // Time to hand the whole frame (every speaker, every player) to Simple Voice Chat
+        long fanout = System.nanoTime() - start;
+        fanoutNanos += (fanout - fanoutNanos) / JITTER_SMOOTHING;
+        if (fanout > maxFanoutNanos) maxFanoutNanos = fanout;
+
+        // Output jitter: how far the gap since the previous frame strays from 20ms (only while talking)
+        long interval = now - lastSentNanos;
+        if (lastSentNanos != 0L && interval < 2 * FRAME_NANOS) {
+            long deviation = Math.abs(interval - FRAME_NANOS);
+            jitterNanos += (deviation - jitterNanos) / JITTER_SMOOTHING;
+            if (deviation > maxJitterNanos) maxJitterNanos = deviation;
+        }
+        lastSentNanos = now;
+        if (burstEnded && size == 0) resetSchedule();
+    }
+
+    private void endBurst(int speaker) {
+        try {
+            sink.send(speaker, null);
+        } catch (Throwable t) {
+            Core.platform.error("Error ending Discord audio burst", t);
+        }
+    }
+
+    /**
+     * Forgets the schedule and jitter baseline after a burst ended, so the gap before the next burst
+     * is neither paced against nor counted as jitter.
+     */
+    private void resetSchedule() {
+        scheduled = false;
+        lastSentNanos = 0L;
+    }
+
+    private void dropOldestFrame() {
+        int tick = ticks[head];
+        while (size > 0 && ticks[head] == tick) {
+            // Ends of bursts are still delivered so the channels get flushed
+            if (payloads[head] == null) endBurst(speakers[head]);
+            payloads[head] = null;
+            head = (head + 1) % CAPACITY;
+            size--;
+        }
+        queuedFrames--;
+        framesDropped++;
+    }
+
+    long framesSent() {
+        return framesSent;
+    }
+
+    long framesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return smoothed output jitter in nanoseconds
+     */
+    long jitterNanos() {
+        return jitterNanos;
+    }
+
+    long maxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    /**
+     * @return smoothed time spent sending one frame to the group, in nanoseconds
+     */
+    long fanoutNanos() {
+        return fanoutNanos;
+    }
+
+    long maxFanoutNanos() {
+        return maxFanoutNanos;
+    }
+}
@@ -0,0 +1,142 @@
+package dev.amsam0.voicechatdiscord;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reader for the native Discord -> Minecraft audio ring (see audio_ring.rs for the layout).
+ * The memory belongs to the native bot; records are read in place, so no Java objects are
+ * created per packet apart from the Opus payload handed to Simple Voice Chat.
+ * Only one thread may read a ring at a time.
+ */
+final class DiscordAudioRing {
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int DROPPED_SPEAKER = -1;
+    // Opus length of a header-only record marking the end of a speaker's burst of speech
+    static final int END_OF_BURST = 0xFFFF;
+    private static final int WRITE_POS_OFFSET = 0;
+    private static final int READ_POS_OFFSET = 8;
+    private static final int DROPPED_OFFSET = 16;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int dataMask;
+    // Position of the next unread record, and the write position it is read up to
+    private long readPos;
+    private long limit;
+
+    // Fields of the record the cursor is positioned on
+    private int recordOffset;
+    private int speaker;
+    private int tick;
+    private int sequence;
+    private int opusLength;
+
+    DiscordAudioRing(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        int dataSize = buffer.capacity() - HEADER_SIZE;
+        if (Integer.bitCount(dataSize) != 1) {
+            throw new IllegalArgumentException("Audio ring data size must be a power of two, got " + dataSize);
+        }
+        this.dataMask = dataSize - 1;
+        // Skip anything published before this reader attached
+        this.readPos = writePosition();
+        this.limit = readPos;
+        commit();
+    }
+
+    long writePosition() {
+        return (long) LONG_VIEW.getAcquire(buffer, WRITE_POS_OFFSET);
+    }
+
+    long readPosition() {
+        return readPos;
+    }
+
+    long droppedCount() {
+        return (long) LONG_VIEW.getOpaque(buffer, DROPPED_OFFSET);
+    }
+
+    /**
+     * Makes records up to the given write position (as returned by the native wait) readable.
+     */
+    void publishedUpTo(long writePos) {
+        limit = writePos;
+    }
+
+    /**
+     * Advances the cursor to the next audio record, skipping wrap padding and records the native
+     * side dropped after writing them (speaker handle {@link #DROPPED_SPEAKER}).
+     * @return false once every published record has been read
+     */
+    boolean next() {
+        while (readPos < limit) {
+            int offset = HEADER_SIZE + (int) (readPos & dataMask);
+            int length = buffer.getInt(offset);
+            if (length < 0) {
+                readPos += -length;
+                continue;
+            }
+            readPos += length;
+            int handle = buffer.getInt(offset + 8);
+            if (handle == DROPPED_SPEAKER) continue;
+            recordOffset = offset;
+            speaker = handle;
+            tick = buffer.getInt(offset + 12);
+            sequence = Short.toUnsignedInt(buffer.getShort(offset + 4));
+            opusLength = Short.toUnsignedInt(buffer.getShort(offset + 6));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the speaker handle of the current record (see {@link SpeakerTable})
+     */
+    int speaker() {
+        return speaker;
+    }
+
+    /**
+     * @return the native VoiceTick the current record came from; records sharing a tick form one 20ms frame
+     */
+    int tick() {
+        return tick;
+    }
+
+    int sequence() {
+        return sequence;
+    }
+
+    int opusLength() {
+        return opusLength;
+    }
+
+    /**
+     * @return whether the current record only says its speaker stopped talking (it has no payload)
+     */
+    boolean endOfBurst() {
+        return opusLength == END_OF_BURST;
+    }
+
+    /**
+     * Copies the current record's Opus payload into a new array. This is the only copy made on the
+     * Java side; it can't come from a pool because Simple Voice Chat may hold on to the array it is sent.
+     */
+    byte[] copyOpus() {
+        byte[] opus = new byte[opusLength];
+        buffer.get(recordOffset + RECORD_HEADER_SIZE, opus, 0, opusLength);
+        return opus;
+    }
+
+    /**
+     * Hands every record read so far back to the native writer.
+     */
+    void commit() {
+        LONG_VIEW.setRelease(buffer, READ_POS_OFFSET, readPos);
+    }
+}
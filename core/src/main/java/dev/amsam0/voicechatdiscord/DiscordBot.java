@@ -1,8 +1,7 @@
 package dev.amsam0.voicechatdiscord;
 
 import de.maxhenkel.voicechat.api.ServerPlayer;
-import de.maxhenkel.voicechat.api.packets.StaticSoundPacket;
-import de.maxhenkel.voicechat.api.packets.ConvertablePacket;
+import de.maxhenkel.voicechat.api.packets.MicrophonePacket;
 
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,23 +11,41 @@ import static dev.amsam0.voicechatdiscord.Core.platform;
 public final class DiscordBot {
     // Map of Discord user IDs to their category IDs (as String)
     public static final java.util.Map<Long, String> discordUserCategoryMap = new ConcurrentHashMap<>();
-    // Track the last set of talking Discord users shown to the group
-    private java.util.Set<String> lastSentTalkingUsers = java.util.Collections.emptySet();
-    private long lastSentTime = 0L;
+    // Speaker handles referenced by Discord audio records
+    private final SpeakerTable speakers = new SpeakerTable();
+    // Action bar of Discord users currently talking, fed by the audio dispatcher
+    private final TalkingIndicator talkingIndicator = new TalkingIndicator(speakers);
+    // Fan-out table for the group this bot bridges to, rebuilt off the dispatcher thread
+    private volatile AudioFanout fanout = AudioFanout.EMPTY;
+    private volatile UUID fanoutGroupId = null;
+    private final java.util.concurrent.atomic.AtomicBoolean fanoutRebuildPending = new java.util.concurrent.atomic.AtomicBoolean(false);
+    // Channels removed from the group that the live table may still send to; pooled once a rebuild replaces it
+    private final java.util.concurrent.ConcurrentLinkedQueue<java.util.Map.Entry<UUID, de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel>> pendingChannelReleases = new java.util.concurrent.ConcurrentLinkedQueue<>();
+    // Speakers heard while not in this bot's Discord channel (or before the table had a row for them)
+    private final java.util.Set<Integer> heardSpeakers = ConcurrentHashMap.newKeySet();
+    // Whether the native side mixes all Discord speakers into one stream; only changed by fan-out rebuilds
+    private volatile boolean mixingDiscordAudio = false;
     /**
-     * Thread that polls for Discord audio and sends it to group members.
+     * This bot's registration with the shared Discord audio dispatcher, or null when not bridging.
      */
-    private Thread discordAudioThread;
-    // Each audio thread owns its token; a stop only invalidates the token of the
-    // thread it targeted, so a stale thread can never be revived by a later start.
-    private final Object audioThreadLock = new Object();
-    private java.util.concurrent.atomic.AtomicBoolean audioThreadToken = null;
+    private DiscordAudioDispatcher.Registration audioRegistration;
+    private final Object audioBridgeLock = new Object();
     // Serializes stop/start/restart sequences so they can't interleave.
     private final java.util.concurrent.locks.ReentrantLock lifecycleLock = new java.util.concurrent.locks.ReentrantLock();
     private volatile boolean freed = false;
     // Discord connection and bridging logic
     private final long categoryId;
     private volatile long ptr;
+    // Player UUID -> native buffer slot, assigned on the player's first microphone packet and released when
+    // they leave the group; valid until _free. Assignment and release run inside the map's per-key compute so
+    // the cache never keeps a slot the native side has freed.
+    // Each value packs the slot (low 32 bits) with its generation (high 32 bits), as returned by _playerSlot.
+    private final java.util.Map<UUID, Long> playerSlots = new ConcurrentHashMap<>();
+    // Queue of microphone packets drained by the native mixer, or null to pass each packet over JNI
+    private volatile MicrophoneRing microphoneRing;
+    // Held shared by threads writing microphone packets into native memory (the ring or a player's slot) and
+    // exclusively by free(), so the memory is never freed under a writer
+    private final java.util.concurrent.locks.ReentrantReadWriteLock microphoneWriters = new java.util.concurrent.locks.ReentrantReadWriteLock();
 
     // Store the Discord voice channel ID for this group
     private volatile Long discordChannelId = null;
@@ -53,7 +70,7 @@ public final class DiscordBot {
 
     /**
      * Lock serializing this bot's stop/start/restart sequences. Hold it for the
-     * full sequence (disconnect, stop, logIn, start, startDiscordAudioThread).
+     * full sequence (disconnect, stop, logIn, start, startDiscordAudioBridge).
      */
     public java.util.concurrent.locks.ReentrantLock getLifecycleLock() {
         return lifecycleLock;
@@ -65,6 +82,14 @@ public final class DiscordBot {
         this.categoryId = categoryId;
         ptr = _new(token, categoryId);
         this.discordChannelId = null;
+        try {
+            microphoneRing = new MicrophoneRing(_microphoneRingBuffer(ptr), () -> {
+                long p = ptr;
+                if (p != 0) _wakeMicrophoneRing(p);
+            });
+        } catch (Throwable t) {
+            platform.error("Failed to attach to microphone ring for bot; microphone packets will be passed to Discord one at a time", t);
+        }
     }
 
     /**
@@ -322,178 +347,225 @@ public final class DiscordBot {
     private static native long _sendDiscordTextMessageWithId(long ptr, String message);
 
     /**
-     * Starts the background thread for Discord audio bridging.
+     * Starts bridging this bot's Discord audio to the group via the shared dispatcher.
      */
-    public void startDiscordAudioThread(UUID groupId) {
+    public void startDiscordAudioBridge(UUID groupId) {
         if (freed || ptr == 0) {
-            platform.warn("Attempted to start audio thread after bot was freed or ptr was invalid (vcid=" + discordChannelId + ")");
+            platform.warn("Attempted to start audio bridge after bot was freed or ptr was invalid (vcid=" + discordChannelId + ")");
             return;
         }
-        synchronized (audioThreadLock) {
-            // Never allow two live consumer threads: stop any existing one first.
-            stopDiscordAudioThreadLocked();
-            final java.util.concurrent.atomic.AtomicBoolean token = new java.util.concurrent.atomic.AtomicBoolean(true);
-            audioThreadToken = token;
-            discordAudioThread = new Thread(() -> {
-                while (token.get() && !freed) {
-                    try {
-                        Object result = _blockForSpeakingBufferOpusData(ptr);
-                        if (!token.get() || freed) break;
-
-                        if (result instanceof byte[][][] userPackets && userPackets.length > 0) {
-                            sendDiscordAudioToGroup(groupId, userPackets);
-                        } else {
-                            sendDiscordAudioToGroup(groupId, new byte[0][][]);
-                        }
-                    } catch (Throwable t) {
-                        platform.error("Error in Discord audio thread for bot (vcid=" + discordChannelId + ")", t);
-                    }
-                }
-            }, "DiscordAudioBridgeThread");
-            discordAudioThread.setDaemon(true);
-            discordAudioThread.start();
+        synchronized (audioBridgeLock) {
+            // Never allow two live registrations: stop any existing one first.
+            stopDiscordAudioBridgeLocked();
+            DiscordAudioRing ring;
+            try {
+                ring = new DiscordAudioRing(_audioRingBuffer(ptr));
+            } catch (Throwable t) {
+                platform.error("Failed to attach to Discord audio ring for bot (vcid=" + discordChannelId + ")", t);
+                return;
+            }
+            fanoutGroupId = groupId;
+            fanout = AudioFanout.EMPTY;
+            requestFanoutRebuild();
+            audioRegistration = DiscordAudioDispatcher.register(this, groupId, ring);
+            updateAudioBridgeParkingLocked();
         }
     }
 
-    
     /**
-     * Send a list of Discord Opus audio packets (with usernames and user IDs) to all group members in the specified group.
-     * @param groupId The group to send audio to
-     * @param userPackets Array of [usernameBytes, userIdBytes, opusBytes] for each packet
+     * Parks the bridge's talking indicator while no Discord users are in this bot's channel, and resumes it
+     * once one joins. Call after discordUserChannelMap changes for this bot's channel.
+     * The dispatcher itself needs no parking: it only wakes up when a ring publishes audio.
      */
-    public void sendDiscordAudioToGroup(UUID groupId, byte[][][] userPackets) {
-        // Collect currently talking Discord usernames
-        java.util.Set<String> talkingUsersSet = new java.util.HashSet<>();
-        for (int i = 0; i < userPackets.length; i++) {
-            byte[][] tuple = userPackets[i];
-            if (tuple == null || tuple.length != 3) continue;
-            String username = new String(tuple[0]);
-            byte[] opusData = tuple[2];
-            if (opusData != null && opusData.length > 0 && username != null && !username.isEmpty()) {
-                talkingUsersSet.add(username);
-            }
+    public void updateAudioBridgeParking() {
+        synchronized (audioBridgeLock) {
+            updateAudioBridgeParkingLocked();
         }
-        // Sort usernames alphabetically for display
-        java.util.List<String> talkingUsers = new java.util.ArrayList<>(talkingUsersSet);
-        java.util.Collections.sort(talkingUsers, String.CASE_INSENSITIVE_ORDER);
+    }
 
-        // Only update action bar if the set of talking users changed, or every 2.0s
+    private void updateAudioBridgeParkingLocked() {
+        if (audioRegistration == null) return;
+        Long channelId = discordChannelId;
+        boolean occupied = GroupManager.discordUsersInChannel(channelId) > 0;
+        if (occupied && !talkingIndicator.isRunning()) {
+            talkingIndicator.start(audioRegistration.groupId);
+            platform.debug("Resumed Discord audio bridge for group " + audioRegistration.groupId + " (vcid=" + channelId + ")");
+        } else if (!occupied && talkingIndicator.isRunning()) {
+            talkingIndicator.stop();
+            platform.debug("Parked Discord audio bridge for group " + audioRegistration.groupId + ": no Discord users (vcid=" + channelId + ")");
+        }
+    }
+
+    
+    /**
+     * Reads every Discord Opus packet published in the audio ring into the group's pacer.
+     * Called on the dispatcher thread.
+     * @param groupId The group the audio is for
+     * @param ring The bot's audio ring, with its published limit already advanced
+     * @param pacer The group's pacer, which re-times the audio onto the 20ms schedule
+     */
+    void dispatchDiscordAudio(UUID groupId, DiscordAudioRing ring, DiscordAudioPacer pacer) {
         long now = System.currentTimeMillis();
-        boolean usersChanged = !new java.util.HashSet<>(talkingUsers).equals(lastSentTalkingUsers);
-        boolean timeout = (now - lastSentTime > 2000);
-        if ((usersChanged && talkingUsers.isEmpty()) || (usersChanged || (timeout && !talkingUsers.isEmpty()))) {
-            lastSentTalkingUsers = new java.util.HashSet<>(talkingUsers);
-            lastSentTime = now;
-            Component[] msg;
-            if (talkingUsers.isEmpty()) {
-                msg = new Component[] { Component.blue("") };
-            } else if (talkingUsers.size() == 1) {
-                msg = new Component[] {
-                    Component.gold(talkingUsers.get(0)),
-                    Component.green(" is talking")
-                };
-            } else {
-                java.util.List<Component> msgList = new java.util.ArrayList<>();
-                for (int i = 0; i < talkingUsers.size(); i++) {
-                    if (i > 0) msgList.add(Component.white(", "));
-                    msgList.add(Component.gold(talkingUsers.get(i)));
-                }
-                msgList.add(Component.green(" are talking"));
-                msg = msgList.toArray(new Component[0]);
+        AudioFanout table = fanout;
+        if (!groupId.equals(table.groupId)) table = AudioFanout.EMPTY;
+        while (ring.next()) {
+            int speaker = ring.speaker();
+            if (ring.endOfBurst()) {
+                pacer.addEndOfBurst(speaker);
+                continue;
             }
-
-            var players = GroupManager.groupPlayerMap.get(groupId);
-            if (players != null) {
-                for (var serverPlayer : players) {
-                    platform.sendActionBar(serverPlayer, msg);
-                }
+            // In mixing mode each speaker still sends an empty record per tick, just for this
+            talkingIndicator.mark(speaker, now);
+            if (ring.opusLength() == 0) continue;
+            var row = table.row(speaker);
+            if (row == null) {
+                // First audio from this speaker (channels are created lazily), or the mixing mode is switching.
+                // Still queue it: the pacer resolves the row again at send time, by which point the rebuild
+                // has usually landed.
+                if (speaker < 0) continue;
+                if (heardSpeakers.add(speaker)) requestFanoutRebuild();
+            } else if (row.length == 0) {
+                continue;
             }
+            pacer.add(ring.tick(), speaker, ring.copyOpus());
         }
+    }
 
-        if (userPackets.length == 0) {
+    /**
+     * Sends one paced Discord Opus packet to every group member, or flushes the speaker's channels if
+     * opusData is null (the speaker's burst of speech is over). Called on the dispatcher thread.
+     */
+    void sendPacedDiscordAudio(UUID groupId, int speaker, byte[] opusData) {
+        AudioFanout table = fanout;
+        if (!groupId.equals(table.groupId)) return;
+        var row = table.row(speaker);
+        if (row == null) return;
+        if (opusData == null) {
+            // Lets clients drop their buffered audio and jitter state instead of waiting it out
+            for (var channel : row) {
+                if (!channel.isClosed()) channel.flush();
+            }
             return;
         }
-        
-        var groupChannels = GroupManager.groupAudioChannels.get(groupId);
-        if (groupChannels == null) return;
-        for (int i = 0; i < userPackets.length; i++) {
-            byte[][] tuple = userPackets[i];
-            if (tuple == null || tuple.length != 3) continue;
-            String username = new String(tuple[0]);
-            // Extract Discord user ID from bytes using ByteBuffer
-            long discordUserId = 0;
-            if (tuple[1].length >= 8) {
-                discordUserId = java.nio.ByteBuffer.wrap(tuple[1]).order(java.nio.ByteOrder.LITTLE_ENDIAN).getLong();
-            }
-            byte[] opusData = tuple[2];
-            if (opusData == null || opusData.length == 0 || username == null || username.isEmpty()) continue;
-            for (var entry : groupChannels.entrySet()) {
-                var playerId = entry.getKey();
-                var playerChannels = entry.getValue();
-                var channel = playerChannels != null ? playerChannels.get(discordUserId) : null;
-                if (channel != null && channel.isClosed()) {
-                    // A closed channel can never deliver audio again; drop it so it gets recreated below.
-                    playerChannels.remove(discordUserId, channel);
-                    channel = null;
+        if (table.send(speaker, opusData)) requestFanoutRebuild();
+    }
+
+    /**
+     * Schedules a rebuild of this bot's fan-out table. Call after anything that changes which players,
+     * Discord users or speaker handles are in the group. Requests made while a rebuild is queued coalesce.
+     */
+    public void requestFanoutRebuild() {
+        if (freed || fanoutGroupId == null) return;
+        if (fanoutRebuildPending.compareAndSet(false, true)) {
+            AudioFanout.BUILDER.execute(() -> {
+                fanoutRebuildPending.set(false);
+                // Removed from the group before this build starts, so the table built below no longer uses them
+                var releases = new java.util.ArrayList<java.util.Map.Entry<UUID, de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel>>();
+                for (var release = pendingChannelReleases.poll(); release != null; release = pendingChannelReleases.poll()) {
+                    releases.add(release);
                 }
-                if (channel == null) {
-                    // Create channel on the fly
-                    var connection = Core.api.getConnectionOf(playerId);
-                    var group = Core.api.getGroup(groupId);
-                    var player = connection != null ? connection.getPlayer() : null;
-                    var level = player != null ? player.getServerLevel() : null;
-                    if (group != null && level != null && connection != null) {
-                        var randomChannelId = UUID.randomUUID();
-                        var newChannel = Core.api.createStaticAudioChannel(randomChannelId, level, connection);
-                        if (newChannel != null) {
-                            String categoryId = discordUserCategoryMap.get(discordUserId);
-                            if (categoryId != null) {
-                                newChannel.setCategory(categoryId);
-                            }
-                            playerChannels.put(discordUserId, newChannel);
-                            channel = newChannel;
-                            platform.debug("[sendDiscordAudioToGroup] Created StaticAudioChannel on the fly for player " + playerId + ", Discord user '" + username + "' (ID: " + discordUserId + ") in group " + groupId + " (vcid=" + discordChannelId + ")");
-                        } else {
-                            platform.error("[sendDiscordAudioToGroup] Failed to create StaticAudioChannel for player " + playerId + ", Discord user '" + username + "' (ID: " + discordUserId + ") in group " + groupId + " (vcid=" + discordChannelId + ")");
-                        }
-                    } else {
-                        platform.error("[sendDiscordAudioToGroup] Cannot create StaticAudioChannel: missing group, level, or connection for player " + playerId + " (vcid=" + discordChannelId + ")");
-                        continue;
-                    }
+                UUID groupId = fanoutGroupId;
+                if (freed || groupId == null) {
+                    releaseChannels(releases);
+                    return;
                 }
-                if (channel != null && !channel.isClosed()) {
-                    channel.send(opusData);
+                try {
+                    boolean mixed = shouldMixDiscordAudio(groupId);
+                    fanout = AudioFanout.build(groupId, speakers, heardSpeakers, discordChannelId, mixed);
+                    releaseChannels(releases);
+                    // Switch the native side only once the table can deliver the new kind of records
+                    if (mixed != mixingDiscordAudio && !freed && ptr != 0) {
+                        mixingDiscordAudio = mixed;
+                        _setMixingEnabled(ptr, mixed);
+                        platform.info((mixed ? "Enabled" : "Disabled") + " Discord audio mixing for group " + groupId + " (vcid=" + discordChannelId + ")");
+                    }
+                } catch (Throwable t) {
+                    platform.error("Failed to rebuild Discord audio fan-out for group " + groupId + " (vcid=" + discordChannelId + ")", t);
                 }
-            }
+            });
         }
     }
 
     /**
-     * Stops the background thread for Discord audio bridging.
+     * Returns a channel removed from this bot's group to the player's pool, but only once a rebuilt fan-out table
+     * that no longer sends to it is published. Until then the live table may still write to it, and pooling it
+     * early would let another row pick it up.
      */
-    private void stopDiscordAudioThread() {
-        synchronized (audioThreadLock) {
-            stopDiscordAudioThreadLocked();
+    void releaseChannelAfterRebuild(UUID playerId, de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel channel) {
+        if (channel == null) return;
+        if (freed || fanoutGroupId == null) {
+            // No table has been built for this bot, so nothing sends to the channel
+            AudioChannelPool.release(playerId, channel);
+            return;
+        }
+        pendingChannelReleases.add(java.util.Map.entry(playerId, channel));
+        requestFanoutRebuild();
+    }
+
+    private static void releaseChannels(java.util.List<java.util.Map.Entry<UUID, de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel>> releases) {
+        for (var release : releases) {
+            AudioChannelPool.release(release.getKey(), release.getValue());
         }
     }
 
     /**
-     * Must be called while holding audioThreadLock. Invalidates the current
-     * thread's token so it exits even if the join below times out.
+     * Mixing pays off once every Discord speaker reaching every player on their own channel
+     * (speakers x players) reaches the configured threshold.
+     */
+    private boolean shouldMixDiscordAudio(UUID groupId) {
+        int threshold = Core.discordMixingThreshold;
+        Long channelId = discordChannelId;
+        var players = GroupManager.groupPlayerMap.get(groupId);
+        if (threshold <= 0 || channelId == null || players == null) return false;
+        int discordSpeakers = GroupManager.discordUsersInChannel(channelId);
+        return (long) discordSpeakers * players.size() >= threshold;
+    }
+
+    /**
+     * Number of channels each group member currently needs from this bot: one for the mixed stream, or one
+     * per Discord user that has spoken.
+     */
+    int channelsPerPlayer() {
+        return mixingDiscordAudio ? 1 : heardSpeakers.size();
+    }
+
+    /**
+     * Whether this bot currently sends Discord audio as one mixed stream.
+     */
+    public boolean isMixingDiscordAudio() {
+        return mixingDiscordAudio;
+    }
+
+    // Native method switching between per-speaker and mixed Discord audio
+    private native void _setMixingEnabled(long ptr, boolean enabled);
+
+    /**
+     * Drops a Discord user from the fan-out table after they left this bot's channel.
+     */
+    public void forgetSpeaker(long discordUserId) {
+        int handle = speakers.handleOf(discordUserId);
+        if (handle != SpeakerTable.UNKNOWN) heardSpeakers.remove(handle);
+        requestFanoutRebuild();
+    }
+
+    /**
+     * Stops bridging this bot's Discord audio.
      */
-    private void stopDiscordAudioThreadLocked() {
-        if (audioThreadToken != null) {
-            audioThreadToken.set(false);
-            audioThreadToken = null;
+    private void stopDiscordAudioBridge() {
+        synchronized (audioBridgeLock) {
+            stopDiscordAudioBridgeLocked();
         }
-        if (discordAudioThread != null) {
-            discordAudioThread.interrupt();
-            try {
-                // The native poll blocks for at most 50ms; give the thread time
-                // to finish an in-flight fan-out as well.
-                discordAudioThread.join(250);
-            } catch (InterruptedException ignored) {}
-            discordAudioThread = null;
+    }
+
+    /**
+     * Must be called while holding audioBridgeLock. Returns once the dispatcher
+     * is no longer reading this bot's ring.
+     */
+    private void stopDiscordAudioBridgeLocked() {
+        talkingIndicator.stop();
+        if (audioRegistration != null) {
+            DiscordAudioDispatcher.unregister(audioRegistration);
+            audioRegistration = null;
         }
     }
 
@@ -565,7 +637,7 @@ public final class DiscordBot {
             return;
         }
         try {
-            stopDiscordAudioThread();
+            stopDiscordAudioBridge();
             if (deleteChannel) {
                 deleteDiscordVoiceChannelAsync(() -> {
                     try {
@@ -595,7 +667,14 @@ public final class DiscordBot {
      */
     public void free() {
         freed = true;
-        stopDiscordAudioThread();
+        // Wait for writers that got past the freed check; later ones see it under the lock and return
+        microphoneWriters.writeLock().lock();
+        try {
+            microphoneRing = null;
+        } finally {
+            microphoneWriters.writeLock().unlock();
+        }
+        stopDiscordAudioBridge();
         synchronized (this) {
             pendingEdits.clear();
             editInProgress = false;
@@ -606,7 +685,29 @@ public final class DiscordBot {
         }
     }
 
-    private native void _addAudioToHearingBuffer(long ptr, byte[] groupIdBytes, byte[] rawOpusData, long sequenceNumber);
+    private native long _playerSlot(long ptr, long playerIdMsb, long playerIdLsb);
+
+    /**
+     * Frees the native buffer slot of a player who left the group or disconnected, so the slot table only grows
+     * with the number of players speaking at once. Their next microphone packet assigns a new slot.
+     */
+    public void releasePlayerSlot(UUID playerId) {
+        microphoneWriters.readLock().lock();
+        try {
+            playerSlots.computeIfPresent(playerId, (id, slot) -> {
+                if (!freed && ptr != 0) {
+                    _releasePlayerSlot(ptr, id.getMostSignificantBits(), id.getLeastSignificantBits());
+                }
+                return null;
+            });
+        } finally {
+            microphoneWriters.readLock().unlock();
+        }
+    }
+
+    private native void _releasePlayerSlot(long ptr, long playerIdMsb, long playerIdLsb);
+
+    private native void _addAudioToHearingBuffer(long ptr, int playerSlot, int slotGeneration, byte[] rawOpusData, int length, long sequenceNumber, long arrivalNanos);
 
     /**
      * Handles a MicrophonePacketEvent for bridging Minecraft group audio to Discord (including solo group members).
@@ -627,16 +728,7 @@ public final class DiscordBot {
             }
 
             Long channelId = bot.getDiscordChannelId();
-            boolean hasUsers = false;
-            if (channelId != null) {
-                for (var entry : GroupManager.discordUserChannelMap.entrySet()) {
-                    if (channelId.equals(entry.getValue())) {
-                        hasUsers = true;
-                        break;
-                    }
-                }
-            }
-            if (!hasUsers) {
+            if (GroupManager.discordUsersInChannel(channelId) == 0) {
                 return;
             }
 
@@ -644,12 +736,7 @@ public final class DiscordBot {
             if (sender == null) {
                 return;
             }
-            var packet = event.getPacket();
-            if (!(packet instanceof ConvertablePacket convertable)) {
-                platform.warn("[handleGroupMicrophonePacketEvent] Packet is not convertable to StaticSoundPacket! (vcid=" + channelId + ")");
-                return;
-            }
-            bot.handlePacket(convertable.staticSoundPacketBuilder().build(), sender);
+            bot.handlePacket(event.getPacket(), sender.getUuid());
         } catch (Throwable t) {
             platform.error("[handleGroupMicrophonePacketEvent] Exception occurred", t);
         }
@@ -657,40 +744,108 @@ public final class DiscordBot {
 
     /**
      * Receives a group audio packet from Minecraft and sends it to Discord.
+     * The Opus data and sequence number are read straight off the microphone packet, stamped with the time it
+     * arrived (the native jitter buffer sizes itself from these) and queued on the
+     * microphone ring under the dense slot of the player's native buffer, so nothing is allocated, looked up
+     * by UUID or passed over JNI per packet. Packets too large for a ring slot go over JNI directly.
      */
-    public void handlePacket(StaticSoundPacket packet, ServerPlayer player) {
+    public void handlePacket(MicrophonePacket packet, UUID playerId) {
         if (freed || ptr == 0) {
             platform.warn("handlePacket called after bot was freed or ptr was invalid (vcid=" + discordChannelId + ")");
             return;
         }
-        if (player == null) {
-            platform.warn("handlePacket called with null player (vcid=" + discordChannelId + ")");
-            return;
-        }
-        UUID playerId = player.getUuid();
         if (playerId == null) {
-            platform.warn("StaticSoundPacket missing playerId (vcid=" + discordChannelId + ")");
+            platform.warn("handlePacket called without a player ID (vcid=" + discordChannelId + ")");
             return;
         }
-        byte[] playerIdBytes = uuidToBytes(playerId);
-        byte[] opusData = packet.getOpusEncodedData();
-        long sequenceNumber = packet.getSequenceNumber();
-        _addAudioToHearingBuffer(ptr, playerIdBytes, opusData, sequenceNumber);
+        long arrivalNanos = System.nanoTime();
+        microphoneWriters.readLock().lock();
+        try {
+            // free() may have started since the check above
+            if (freed || ptr == 0) return;
+            Long packedSlot = playerSlots.get(playerId);
+            if (packedSlot == null) {
+                packedSlot = playerSlots.computeIfAbsent(playerId, id -> {
+                    long assigned = _playerSlot(ptr, id.getMostSignificantBits(), id.getLeastSignificantBits());
+                    return assigned >= 0 ? assigned : null;
+                });
+                if (packedSlot == null) return;
+            }
+            int slot = (int) (long) packedSlot;
+            int slotGeneration = (int) (packedSlot >>> 32);
+            byte[] opus = packet.getOpusEncodedData();
+            MicrophoneRing ring = microphoneRing;
+            if (ring == null || !ring.offer(slot, slotGeneration, opus, opus.length, packet.getSequenceNumber(), arrivalNanos)) {
+                _addAudioToHearingBuffer(ptr, slot, slotGeneration, opus, opus.length, packet.getSequenceNumber(), arrivalNanos);
+            }
+        } finally {
+            microphoneWriters.readLock().unlock();
+        }
     }
 
     /**
-     * Converts a UUID to a 16-byte array.
+     * @return microphone packets dropped because the native mixer wasn't draining them, e.g. while no call is playing
      */
-    private static byte[] uuidToBytes(UUID uuid) {
-        long msb = uuid.getMostSignificantBits();
-        long lsb = uuid.getLeastSignificantBits();
-        byte[] bytes = new byte[16];
-        for (int i = 0; i < 8; i++) bytes[i] = (byte) (msb >>> (8 * (7 - i)));
-        for (int i = 0; i < 8; i++) bytes[8 + i] = (byte) (lsb >>> (8 * (7 - i)));
-        return bytes;
+    public long microphonePacketsDropped() {
+        MicrophoneRing ring = microphoneRing;
+        return ring != null ? ring.droppedCount() : 0;
     }
+
+    // Native method wrapping the bot's microphone ring; valid until _free
+    private native java.nio.ByteBuffer _microphoneRingBuffer(long ptr);
+
+    // Wakes the native mixer sleeping on the microphone ring
+    private native void _wakeMicrophoneRing(long ptr);
     
-    private native Object _blockForSpeakingBufferOpusData(long ptr);
+    // Native method wrapping the bot's Discord audio ring; valid until _free
+    private native java.nio.ByteBuffer _audioRingBuffer(long ptr);
+
+    /**
+     * Receive queue counters: [ring drops, then (speaker handle, queue depth, dropped frames, playout depth
+     * in 20ms frames, packets received, packets lost) per speaker].
+     * Returns null if the bot was freed.
+     */
+    public long[] receiveQueueStats() {
+        if (freed || ptr == 0) return null;
+        return _receiveQueueStats(ptr);
+    }
+
+    /**
+     * Output pacing counters for the bridged group: [frames sent, frames dropped to catch up,
+     * smoothed jitter in ns, max jitter in ns, smoothed fan-out time per frame in ns, max fan-out time in ns].
+     * Returns null if the bot isn't bridging a group.
+     */
+    public long[] pacingStats() {
+        DiscordAudioPacer pacer;
+        synchronized (audioBridgeLock) {
+            if (audioRegistration == null) return null;
+            pacer = audioRegistration.pacer;
+        }
+        return new long[] { pacer.framesSent(), pacer.framesDropped(), pacer.jitterNanos(), pacer.maxJitterNanos(), pacer.fanoutNanos(), pacer.maxFanoutNanos() };
+    }
+
+    /**
+     * @return the Discord display name for a speaker handle reported by {@link #receiveQueueStats()}
+     */
+    public String speakerName(int handle) {
+        return speakers.name(handle);
+    }
+
+    // Native method returning this bot's receive queue counters
+    private native long[] _receiveQueueStats(long ptr);
+
+    /**
+     * Minecraft -> Discord jitter buffer counters: (player UUID most significant bits, least significant bits,
+     * buffered 20ms frames, target depth in 20ms frames, late packets, lost frames) per player that has spoken.
+     * Returns null if the bot was freed.
+     */
+    public long[] sendQueueStats() {
+        if (freed || ptr == 0) return null;
+        return _sendQueueStats(ptr);
+    }
+
+    // Native method returning this bot's Minecraft -> Discord jitter buffer counters
+    private native long[] _sendQueueStats(long ptr);
 
     /**
      * Disconnects the bot from the Discord voice channel, but does NOT delete the channel.
@@ -712,15 +867,23 @@ public final class DiscordBot {
     private native void _disconnect(long ptr);
 
     /**
-     * Removes all StaticAudioChannels for a Discord user ID from a group for all players.
+     * Removes all StaticAudioChannels for a Discord user ID from a group for all players, returning them
+     * to each player's channel pool once the group's fan-out table no longer uses them.
      */
     public static void removeDiscordUserChannelsFromGroup(UUID groupId, Long discordUserId) {
+        var bot = GroupManager.groupBotMap.get(groupId);
         var groupChannels = GroupManager.groupAudioChannels.get(groupId);
         if (groupChannels != null) {
-            for (var playerChannels : groupChannels.values()) {
-                playerChannels.remove(discordUserId);
+            for (var entry : groupChannels.entrySet()) {
+                var channel = entry.getValue().remove(discordUserId);
+                if (bot != null) {
+                    bot.releaseChannelAfterRebuild(entry.getKey(), channel);
+                } else {
+                    AudioChannelPool.release(entry.getKey(), channel);
+                }
             }
         }
+        if (bot != null) bot.forgetSpeaker(discordUserId);
     }
 
     /**
@@ -770,6 +933,19 @@ public final class DiscordBot {
         return s.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
     }
 
+    /**
+     * Called from Rust when a speaker handle is assigned to a Discord user, or when one of
+     * their SSRCs is mapped again (which refreshes the display name).
+     * @param handle The speaker handle used in audio records
+     * @param discordUserId The Discord user ID (as a long)
+     * @param username The Discord display name
+     */
+    public void onDiscordSpeakerRegistered(int handle, long discordUserId, String username) {
+        speakers.register(handle, discordUserId, username);
+        requestFanoutRebuild();
+        platform.debug("[DiscordBot] Registered speaker handle " + handle + " for '" + username + "' (ID: " + discordUserId + ", vcid=" + discordChannelId + ")");
+    }
+
     /**
      * Called from Rust when a Discord user's voice state changes (join/leave VC).
      * @param discordUserId The Discord user ID (as a long)
@@ -812,7 +988,7 @@ public final class DiscordBot {
         // If switching, first send leave message for old channel
         if (isSwitching) {
             // Remove from old channel
-            Long oldChannelId = GroupManager.discordUserChannelMap.remove(discordUserId);
+            Long oldChannelId = GroupManager.untrackDiscordUserChannel(discordUserId);
             GroupManager.discordUserNameMap.remove(discordUserId);
             if (oldChannelId != null && oldChannelId != 0L) {
                 // Find the group for the old channel
@@ -826,6 +1002,8 @@ public final class DiscordBot {
                 }
                 if (oldGroupId != null) {
                     removeDiscordUserChannelsFromGroup(oldGroupId, discordUserId);
+                    var oldGroupBot = GroupManager.groupBotMap.get(oldGroupId);
+                    if (oldGroupBot != null) oldGroupBot.updateAudioBridgeParking();
                     var oldPlayers = GroupManager.groupPlayerMap.get(oldGroupId);
                     if (oldPlayers != null && !oldPlayers.isEmpty()) {
                         Component prefix = Component.blue("[Discord] ");
@@ -876,7 +1054,7 @@ public final class DiscordBot {
                 platform.debug("[DiscordBot] User " + discordUserId + " already in channel " + channelId + ", skipping join event.");
                 return;
             }
-            GroupManager.discordUserChannelMap.put(discordUserId, channelId);
+            GroupManager.trackDiscordUserChannel(discordUserId, channelId);
             GroupManager.discordUserNameMap.put(discordUserId, username);
 
             // Create/register a unique category for this Discord user if not already present
@@ -897,32 +1075,15 @@ public final class DiscordBot {
                 platform.debug("Registered volume category for Discord user '" + username + "' (ID: " + discordUserId + ", catId: " + categoryId + ")");
             }
 
-            // Create a StaticAudioChannel for this Discord user for every player in the group, and assign the category
-            var groupPlayers = GroupManager.groupPlayerMap.get(foundGroupId);
-            if (groupPlayers != null) {
-                for (var player : groupPlayers) {
-                    var playerId = player.getUuid();
-                    var connection = Core.api.getConnectionOf(playerId);
-                    var level = player.getServerLevel();
-                    if (connection != null && level != null) {
-                        var channelIdUuid = java.util.UUID.randomUUID();
-                        var staticChannel = Core.api.createStaticAudioChannel(channelIdUuid, level, connection);
-                        if (staticChannel != null) {
-                            staticChannel.setCategory(categoryId);
-                            GroupManager.groupAudioChannels
-                                .computeIfAbsent(foundGroupId, k -> new ConcurrentHashMap<>())
-                                .computeIfAbsent(playerId, k -> new ConcurrentHashMap<>())
-                                .put(discordUserId, staticChannel);
-                            platform.debug("Created StaticAudioChannel for Discord user '" + username + "' and player " + playerId + " in group " + foundGroupId + " with category " + categoryId);
-                        } else {
-                            platform.error("Failed to create StaticAudioChannel for Discord user '" + username + "' and player " + playerId + " in group " + foundGroupId);
-                        }
-                    }
-                }
+            // No audio channels are created here: the fan-out rebuild creates them (with this category) once the user speaks
+            var groupBot = GroupManager.groupBotMap.get(foundGroupId);
+            if (groupBot != null) {
+                groupBot.requestFanoutRebuild();
+                groupBot.updateAudioBridgeParking();
             }
         } else {
             // On leave, look up the last channel they were in
-            GroupManager.discordUserChannelMap.remove(discordUserId);
+            GroupManager.untrackDiscordUserChannel(discordUserId);
             GroupManager.discordUserNameMap.remove(discordUserId);
             if (groupChannelId == null || groupChannelId == 0L) {
                 platform.debug("[DiscordBot] No previous channel found for user " + discordUserId + " (vcid=null), cannot send leave message.");
@@ -931,6 +1092,8 @@ public final class DiscordBot {
 
             // Remove all StaticAudioChannels for this Discord user for every player in the group
             removeDiscordUserChannelsFromGroup(foundGroupId, discordUserId);
+            var groupBot = GroupManager.groupBotMap.get(foundGroupId);
+            if (groupBot != null) groupBot.updateAudioBridgeParking();
             // Only unregister the category if the new channelId is zero (user left VC, not just switched)
             if (channelId == 0L) {
                 String categoryId = discordUserCategoryMap.remove(discordUserId);
@@ -988,7 +1151,7 @@ public final class DiscordBot {
         // in this bot's channel. No users means nobody can be sending audio, so
         // the errors must belong to some other bot's session.
         Long channelId = discordChannelId;
-        if (channelId == null || !GroupManager.discordUserChannelMap.containsValue(channelId)) {
+        if (GroupManager.discordUsersInChannel(channelId) == 0) {
             platform.debug("Voice receive corruption reported, but no Discord users are in this bot's channel (vcid=" + channelId + "); skipping restart.");
             return;
         }
@@ -6,6 +6,7 @@ import de.maxhenkel.voicechat.api.VoicechatConnection;
 import de.maxhenkel.voicechat.api.events.CreateGroupEvent;
 import de.maxhenkel.voicechat.api.events.JoinGroupEvent;
 import de.maxhenkel.voicechat.api.events.LeaveGroupEvent;
+import de.maxhenkel.voicechat.api.events.PlayerStateChangedEvent;
 import de.maxhenkel.voicechat.api.events.RemoveGroupEvent;
 import de.maxhenkel.voicechat.api.audiochannel.StaticAudioChannel;
 
@@ -25,8 +26,10 @@ public final class GroupManager {
     private static final Object permanentGroupInitLock = new Object();
     private static volatile UUID permanentGroupId = null;
 
-    // Discord userId -> current channelId
+    // Discord userId -> current channelId; update through trackDiscordUserChannel/untrackDiscordUserChannel
     public static final Map<Long, Long> discordUserChannelMap = new ConcurrentHashMap<>();
+    // Discord channelId -> number of Discord users in it, kept in step with discordUserChannelMap
+    private static final Map<Long, java.util.concurrent.atomic.AtomicInteger> discordChannelOccupancy = new ConcurrentHashMap<>();
     // Discord userId -> username
     public static final Map<Long, String> discordUserNameMap = new ConcurrentHashMap<>();
 
@@ -40,6 +43,9 @@ public final class GroupManager {
     // Map groupId -> (player UUID -> (Discord user ID -> StaticAudioChannel))
     public static final Map<UUID, Map<UUID, Map<Long, StaticAudioChannel>>> groupAudioChannels = new ConcurrentHashMap<>();
 
+    // Players with voice chat disabled or disconnected from the voice server, from PlayerStateChangedEvent
+    public static final Set<UUID> inaudiblePlayers = ConcurrentHashMap.newKeySet();
+
     // Map groupId -> DiscordBot
     public static final Map<UUID, DiscordBot> groupBotMap = new ConcurrentHashMap<>();
     // Track groups pending Discord channel creation
@@ -162,7 +168,7 @@ public final class GroupManager {
                     if (!bot.isStarted()) {
                         platform.debug("Permanent group has its first player; connecting bot to Discord VC.");
                         if (startVoiceWithRetry(bot)) {
-                            bot.startDiscordAudioThread(groupId);
+                            bot.startDiscordAudioBridge(groupId);
                         } else {
                             platform.error("Failed to connect permanent group bot to Discord VC; will retry on the next group join/leave.");
                         }
@@ -361,7 +367,7 @@ public final class GroupManager {
                     Thread.sleep(750);
                 } catch (InterruptedException ignored) {}
                 if (bot.logIn() && startVoiceWithRetry(bot)) {
-                    bot.startDiscordAudioThread(groupId);
+                    bot.startDiscordAudioBridge(groupId);
                     platform.info("Auto-restart of Discord bot complete (vcid=" + bot.getDiscordChannelId() + ").");
                 } else {
                     platform.error("Auto-restart of Discord bot failed (vcid=" + bot.getDiscordChannelId() + "). A manual /dvcgroup restart may be needed.");
@@ -387,7 +393,7 @@ public final class GroupManager {
                 return;
             }
             try {
-                // Rust state is already NotLoggedIn; this just stops the audio thread.
+                // Rust state is already NotLoggedIn; this just stops the audio bridge.
                 bot.stop(false);
 
                 long[] delaysMs = {5_000, 15_000, 30_000, 60_000, 120_000};
@@ -416,7 +422,7 @@ public final class GroupManager {
                         return;
                     }
                     if (startVoiceWithRetry(bot)) {
-                        bot.startDiscordAudioThread(groupId);
+                        bot.startDiscordAudioBridge(groupId);
                         platform.info("Gateway re-login succeeded and voice reconnected (vcid=" + bot.getDiscordChannelId() + ").");
                     } else {
                         platform.error("Gateway re-login succeeded but the voice reconnect failed (vcid=" + bot.getDiscordChannelId() + "). Use /dvcgroup restart.");
@@ -459,18 +465,62 @@ public final class GroupManager {
                             platform.debug("Unregistered volume category for Discord user '" + username + "' (ID: " + discordUserId + ")");
                         }
                     }
-                    discordUserChannelMap.remove(discordUserId);
+                    untrackDiscordUserChannel(discordUserId);
                     discordUserNameMap.remove(discordUserId);
                 }
             }
         }
         groupBotMap.remove(groupId);
-        groupAudioChannels.remove(groupId);
+        var channels = groupAudioChannels.remove(groupId);
+        if (channels != null) {
+            channels.forEach(AudioChannelPool::releaseAll);
+        }
         lastPlayerCounts.remove(groupId);
     }
 
+    /**
+     * Records that a Discord user is now in the given channel.
+     */
+    public static void trackDiscordUserChannel(long discordUserId, Long channelId) {
+        discordUserChannelMap.compute(discordUserId, (k, previous) -> {
+            if (!channelId.equals(previous)) {
+                if (previous != null) adjustDiscordChannelOccupancy(previous, -1);
+                adjustDiscordChannelOccupancy(channelId, 1);
+            }
+            return channelId;
+        });
+    }
+
+    /**
+     * Records that a Discord user left their channel.
+     * @return the channel they were in, or null if none was tracked
+     */
+    public static Long untrackDiscordUserChannel(long discordUserId) {
+        Long[] removed = new Long[1];
+        discordUserChannelMap.computeIfPresent(discordUserId, (k, previous) -> {
+            adjustDiscordChannelOccupancy(previous, -1);
+            removed[0] = previous;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private static void adjustDiscordChannelOccupancy(Long channelId, int delta) {
+        discordChannelOccupancy.computeIfAbsent(channelId, k -> new java.util.concurrent.atomic.AtomicInteger()).addAndGet(delta);
+    }
+
+    /**
+     * Number of Discord users in a channel. O(1) and allocation-free, so it is safe to call per audio packet.
+     */
+    public static int discordUsersInChannel(Long channelId) {
+        if (channelId == null) return 0;
+        var count = discordChannelOccupancy.get(channelId);
+        return count != null ? count.get() : 0;
+    }
+
     public static void clearTrackedState() {
         discordUserChannelMap.clear();
+        discordChannelOccupancy.clear();
         discordUserNameMap.clear();
         // Also forget per-user volume categories: if this map kept stale
         // entries across a reload, users rejoining would skip category
@@ -482,6 +532,8 @@ public final class GroupManager {
             pendingJoinEvents.clear();
         }
         groupAudioChannels.clear();
+        AudioChannelPool.clear();
+        inaudiblePlayers.clear();
         groupBotMap.clear();
         pendingGroupCreations.clear();
         synchronized (removedBeforeCreation) {
@@ -494,35 +546,11 @@ public final class GroupManager {
     private static void handlePlayerJoin(Group group, ServerPlayer player, VoicechatConnection connection, DiscordBot bot, int playerCount) {
         platform.debug("[handlePlayerJoin] Handling join for player " + player.getUuid() + " in group " + group.getId());
         
-        // Create a StaticAudioChannel for every Discord user currently in the VC for this group
         if (bot != null) {
-            Long discordChannelId = bot.getDiscordChannelId();
-            if (discordChannelId != null) {
-                for (var entry : discordUserChannelMap.entrySet()) {
-                    if (entry.getValue() != null && entry.getValue().equals(discordChannelId)) {
-                        Long discordUserId = entry.getKey();
-                        String username = discordUserNameMap.get(discordUserId);
-                        if (username != null && !username.isEmpty()) {
-                            var playerId = player.getUuid();
-                            var level = player.getServerLevel();
-                            var staticChannel = Core.api.createStaticAudioChannel(UUID.randomUUID(), level, connection);
-                            if (staticChannel != null) {
-                                String categoryId = DiscordBot.discordUserCategoryMap.get(discordUserId);
-                                if (categoryId != null) {
-                                    staticChannel.setCategory(categoryId);
-                                }
-                                groupAudioChannels
-                                    .computeIfAbsent(group.getId(), k -> new ConcurrentHashMap<>())
-                                    .computeIfAbsent(playerId, k -> new ConcurrentHashMap<>())
-                                    .put(discordUserId, staticChannel);
-                                platform.debug("Created StaticAudioChannel for Discord user '" + username + "' (ID: " + discordUserId + ") and player " + playerId + " in group " + group.getId());
-                            } else {
-                                platform.error("Failed to create StaticAudioChannel for Discord user '" + username + "' (ID: " + discordUserId + ") and player " + playerId + " in group " + group.getId());
-                            }
-                        }
-                    }
-                }
-            }
+            // Audio channels for this player are assigned by the fan-out rebuild, for Discord users that actually
+            // speak; pre-create them first so the rebuild finds them in the pool
+            AudioChannelPool.prewarm(player.getUuid(), bot.channelsPerPlayer());
+            bot.requestFanoutRebuild();
 
             String joinMsg = "[<t:" + (System.currentTimeMillis() / 1000) + ":t>] **" + platform.getName(player) + "** joined the group! (" + playerCount + (playerCount == 1 ? " Player" : " Players") + ")";
             bot.sendDiscordTextMessageAsync(joinMsg, true);
@@ -702,7 +730,7 @@ public final class GroupManager {
                                 }
                             }
 
-                            bot.startDiscordAudioThread(groupId);
+                            bot.startDiscordAudioBridge(groupId);
                             groupBotMap.put(groupId, bot);
                             platform.debug("Linked groupId " + groupId + " (" + group.getName() + ") to bot (discordChannelId=" + discordChannelId + ")");
                         } finally {
@@ -790,10 +818,20 @@ public final class GroupManager {
             players.removeIf(p -> p.getUuid().equals(playerUuid));
         }
 
-        // Remove all StaticAudioChannels for this player if present
+        // Return all StaticAudioChannels for this player to their pool once the fan-out table stops using them
+        DiscordBot groupBot = groupBotMap.get(groupId);
         Map<UUID, Map<Long, StaticAudioChannel>> channels = groupAudioChannels.get(groupId);
-        if (channels != null) {
-            channels.remove(playerUuid);
+        Map<Long, StaticAudioChannel> playerChannels = channels != null ? channels.remove(playerUuid) : null;
+        if (groupBot == null) {
+            AudioChannelPool.releaseAll(playerUuid, playerChannels);
+        } else if (playerChannels != null) {
+            for (var channel : playerChannels.values()) {
+                groupBot.releaseChannelAfterRebuild(playerUuid, channel);
+            }
+        }
+        if (groupBot != null) {
+            groupBot.requestFanoutRebuild();
+            groupBot.releasePlayerSlot(playerUuid);
         }
 
         if (players != null && !players.isEmpty()) {
@@ -807,6 +845,39 @@ public final class GroupManager {
         syncPermanentGroupVoiceConnection(groupId);
     }
 
+    /**
+     * Whether Discord audio sent to this player can be heard, i.e. their voice chat is connected and enabled.
+     */
+    public static boolean canHearDiscordAudio(UUID playerUuid) {
+        if (inaudiblePlayers.contains(playerUuid)) return false;
+        var connection = Core.api.getConnectionOf(playerUuid);
+        return connection != null && connection.isConnected() && !connection.isDisabled();
+    }
+
+    public static void onPlayerStateChanged(PlayerStateChangedEvent event) {
+        UUID playerUuid = event.getPlayerUuid();
+        boolean changed = event.isDisabled() || event.isDisconnected()
+                ? inaudiblePlayers.add(playerUuid)
+                : inaudiblePlayers.remove(playerUuid);
+        if (!changed) return;
+
+        for (Map.Entry<UUID, List<ServerPlayer>> entry : groupPlayerMap.entrySet()) {
+            boolean inGroup = false;
+            for (ServerPlayer p : entry.getValue()) {
+                if (p.getUuid().equals(playerUuid)) {
+                    inGroup = true;
+                    break;
+                }
+            }
+            if (inGroup) {
+                platform.debug("[onPlayerStateChanged] Player " + playerUuid + " can " + (inaudiblePlayers.contains(playerUuid) ? "no longer" : "now") + " hear Discord audio in group " + entry.getKey());
+                DiscordBot bot = groupBotMap.get(entry.getKey());
+                if (bot != null) bot.requestFanoutRebuild();
+                break;
+            }
+        }
+    }
+
     public static void handleMinecraftPlayerLeave(UUID playerUuid) {
         for (Map.Entry<UUID, List<ServerPlayer>> entry : groupPlayerMap.entrySet()) {
             UUID groupId = entry.getKey();
@@ -823,5 +894,8 @@ public final class GroupManager {
                 break;
             }
         }
+        // Channels are tied to the connection that just went away
+        AudioChannelPool.discard(playerUuid);
+        inaudiblePlayers.remove(playerUuid);
     }
 }
@@ -0,0 +1,89 @@
+package dev.amsam0.voicechatdiscord;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writer for the native Minecraft -> Discord microphone ring (see mic_ring.rs for the layout).
+ * Any number of threads may offer packets at once; the native mixer drains the ring once per
+ * 20ms frame, so a microphone packet costs no JNI call and no native lock on the caller's thread.
+ * The one exception is the first packet after a quiet period, which rings the doorbell to wake the
+ * sleeping mixer.
+ */
+final class MicrophoneRing {
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_COUNT = 256;
+    static final int SLOT_SIZE = 512;
+    static final int SLOT_HEADER_SIZE = 32;
+    static final int MAX_OPUS_LENGTH = SLOT_SIZE - SLOT_HEADER_SIZE;
+    private static final int CLAIM_POS_OFFSET = 0;
+    private static final int DROPPED_OFFSET = 8;
+    private static final int SLEEPING_OFFSET = 16;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final Runnable doorbell;
+
+    /**
+     * @param doorbell wakes the native mixer; called when a packet is published while it sleeps
+     */
+    MicrophoneRing(ByteBuffer buffer, Runnable doorbell) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.doorbell = doorbell;
+        if (buffer.capacity() != HEADER_SIZE + SLOT_COUNT * SLOT_SIZE) {
+            throw new IllegalArgumentException("Unexpected microphone ring size " + buffer.capacity());
+        }
+    }
+
+    /**
+     * Queues a packet for the player's native buffer slot. An empty payload marks the end of the player's speech.
+     * @param slotGeneration generation of the player's slot, so the native side drops the packet if the slot is
+     *                       reassigned before it is drained
+     * @param arrivalNanos {@link System#nanoTime()} when the packet was received, for the native jitter estimate
+     * @return false if the payload is longer than {@link #MAX_OPUS_LENGTH} and must be passed to the native side directly
+     */
+    boolean offer(int playerSlot, int slotGeneration, byte[] opus, int length, long sequenceNumber, long arrivalNanos) {
+        if (length > MAX_OPUS_LENGTH) return false;
+        long pos = (long) LONG_VIEW.getAcquire(buffer, CLAIM_POS_OFFSET);
+        while (true) {
+            int offset = HEADER_SIZE + (int) (pos & (SLOT_COUNT - 1)) * SLOT_SIZE;
+            long slotSequence = (long) LONG_VIEW.getAcquire(buffer, offset);
+            if (slotSequence == pos) {
+                long witness = (long) LONG_VIEW.compareAndExchange(buffer, CLAIM_POS_OFFSET, pos, pos + 1);
+                if (witness == pos) {
+                    buffer.putInt(offset + 8, playerSlot);
+                    buffer.putShort(offset + 12, (short) sequenceNumber);
+                    buffer.putShort(offset + 14, (short) length);
+                    buffer.putLong(offset + 16, arrivalNanos);
+                    buffer.putInt(offset + 24, slotGeneration);
+                    buffer.put(offset + SLOT_HEADER_SIZE, opus, 0, length);
+                    LONG_VIEW.setRelease(buffer, offset, pos + 1);
+                    // Pairs with the mixer's fence between raising the sleeping word and its last look at the ring
+                    VarHandle.fullFence();
+                    if ((long) LONG_VIEW.getVolatile(buffer, SLEEPING_OFFSET) == 1L
+                            && LONG_VIEW.compareAndSet(buffer, SLEEPING_OFFSET, 1L, 0L)) {
+                        doorbell.run();
+                    }
+                    return true;
+                }
+                pos = witness;
+            } else if (slotSequence < pos) {
+                // The mixer hasn't freed this slot yet: the ring is full (e.g. no call is playing)
+                LONG_VIEW.getAndAdd(buffer, DROPPED_OFFSET, 1L);
+                return true;
+            } else {
+                pos = (long) LONG_VIEW.getAcquire(buffer, CLAIM_POS_OFFSET);
+            }
+        }
+    }
+
+    /**
+     * @return packets dropped because the ring was full
+     */
+    long droppedCount() {
+        return (long) LONG_VIEW.getOpaque(buffer, DROPPED_OFFSET);
+    }
+}
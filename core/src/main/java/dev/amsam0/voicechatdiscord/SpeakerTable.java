@@ -0,0 +1,74 @@
+package dev.amsam0.voicechatdiscord;
+
+/**
+ * Per-bot table of Discord speaker handles announced by the native side.
+ * Audio records only carry the handle; the Discord user ID and display name are
+ * looked up here without allocating. Handle 0 is the unknown speaker.
+ */
+final class SpeakerTable {
+    static final int UNKNOWN = 0;
+    // Pseudo handle of records carrying the native mix of all speakers (mixing mode)
+    static final int MIXED = -2;
+    static final String UNKNOWN_NAME = "Unknown User";
+
+    // Copy-on-write snapshots indexed by handle; replaced together under the table lock
+    private volatile long[] userIds = new long[16];
+    private volatile String[] names = new String[16];
+
+    /**
+     * Records (or renames) a speaker. Called from the native thread that mapped the SSRC.
+     */
+    synchronized void register(int handle, long userId, String name) {
+        if (handle <= UNKNOWN) return;
+        long[] newUserIds = userIds;
+        String[] newNames = names;
+        if (handle >= newUserIds.length) {
+            int capacity = Math.max(handle + 1, newUserIds.length * 2);
+            newUserIds = java.util.Arrays.copyOf(newUserIds, capacity);
+            newNames = java.util.Arrays.copyOf(newNames, capacity);
+        } else {
+            newUserIds = newUserIds.clone();
+            newNames = newNames.clone();
+        }
+        newUserIds[handle] = userId;
+        newNames[handle] = name;
+        // Names first: a reader that sees the new user ID must also see the name
+        names = newNames;
+        userIds = newUserIds;
+    }
+
+    /**
+     * @return one past the highest handle that can currently be registered
+     */
+    int capacity() {
+        return userIds.length;
+    }
+
+    /**
+     * @return the handle registered for a Discord user, or {@link #UNKNOWN}
+     */
+    int handleOf(long userId) {
+        long[] ids = userIds;
+        for (int handle = UNKNOWN + 1; handle < ids.length; handle++) {
+            if (ids[handle] == userId) return handle;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the Discord user ID for the handle, or 0 if it is unknown
+     */
+    long userId(int handle) {
+        long[] ids = userIds;
+        return handle > UNKNOWN && handle < ids.length ? ids[handle] : 0L;
+    }
+
+    /**
+     * @return the display name for the handle, or {@link #UNKNOWN_NAME}
+     */
+    String name(int handle) {
+        String[] snapshot = names;
+        String name = handle > UNKNOWN && handle < snapshot.length ? snapshot[handle] : null;
+        return name == null || name.isEmpty() ? UNKNOWN_NAME : name;
+    }
+}
@@ -24,6 +24,7 @@ public final class SubCommands {
             .then(literal("reloadconfig").executes(wrapInTry(SubCommands::reloadConfig)))
             .then(literal("restart").executes(wrapInTry(SubCommands::restartBot)))
             .then(literal("stop").executes(wrapInTry(SubCommands::stopBot)))
+            .then(literal("stats").executes(wrapInTry(SubCommands::receiveStats)))
             .then(literal("message")
                 .then(RequiredArgumentBuilder.argument("message", StringArgumentType.greedyString())
                     .executes(wrapInTry(SubCommands::sendMessageToDiscord))
@@ -250,7 +251,7 @@ public final class SubCommands {
                     platform.sendMessage(sender, Component.red("The Discord bot could not rejoin the voice channel. See console for details, then try /dvcgroup restart again."));
                     return;
                 }
-                bot.startDiscordAudioThread(finalGroupId);
+                bot.startDiscordAudioBridge(finalGroupId);
                 platform.sendMessage(sender, Component.green("Successfully restarted the Discord bot for your group."));
             } catch (Throwable e) {
                 platform.error("Failed to restart Discord bot for group: " + finalGroupId, e);
@@ -309,6 +310,75 @@ public final class SubCommands {
         }, "voicechat-discord: Reload Config").start();
     }
 
+    /**
+     * OP-only: shows where Discord -> Minecraft audio is being dropped, per bot and per Discord speaker,
+     * each speaker's receive delay and loss, how evenly each group's audio is paced, and each Minecraft
+     * speaker's adaptive delay towards Discord.
+     */
+    private static void receiveStats(CommandContext<?> sender) {
+        if (!platform.isOperator(sender)) {
+            platform.sendMessage(sender, Component.red("You must be an operator to use this command!"));
+            return;
+        }
+
+        platform.sendMessage(
+                sender,
+                Component.yellow("Discord receive queue: "),
+                Component.white(receiveDropPolicy + ", " + receiveQueueFrames + " frames per speaker" + ("expire".equals(receiveDropPolicy) ? ", " + receiveMaxAgeMs + "ms max age" : "")
+                        + (adaptivePlayoutMinFrames > 0 ? ", adaptive delay from " + (adaptivePlayoutMinFrames * 20) + "ms" : ""))
+        );
+        boolean anyRunning = false;
+        for (DiscordBot bot : bots) {
+            long[] stats = bot.receiveQueueStats();
+            Long channelId = bot.getDiscordChannelId();
+            if (stats == null || stats.length == 0 || channelId == null) continue;
+            anyRunning = true;
+            platform.sendMessage(
+                    sender,
+                    Component.gold("Bot (vcid=" + channelId + "): "),
+                    Component.white(stats[0] + " dropped (ring full)" + (bot.isMixingDiscordAudio() ? ", mixing speakers" : "")
+                            + (bot.microphonePacketsDropped() > 0 ? ", " + bot.microphonePacketsDropped() + " microphone packets dropped" : ""))
+            );
+            long[] pacing = bot.pacingStats();
+            if (pacing != null) {
+                platform.sendMessage(
+                        sender,
+                        Component.aqua("  Pacing: "),
+                        Component.white(pacing[0] + " frames sent, " + pacing[1] + " dropped to catch up, jitter "
+                                + String.format("%.1f", pacing[2] / 1_000_000.0) + "ms (max " + String.format("%.1f", pacing[3] / 1_000_000.0) + "ms), fan-out "
+                                + String.format("%.2f", pacing[4] / 1_000_000.0) + "ms (max " + String.format("%.2f", pacing[5] / 1_000_000.0) + "ms) per frame")
+                );
+            }
+            for (int i = 1; i + 5 < stats.length; i += 6) {
+                long packets = stats[i + 4] + stats[i + 5];
+                platform.sendMessage(
+                        sender,
+                        Component.aqua("  " + bot.speakerName((int) stats[i]) + ": "),
+                        Component.white(stats[i + 1] + " queued, "),
+                        stats[i + 2] > 0 ? Component.red(stats[i + 2] + " dropped") : Component.green("0 dropped"),
+                        Component.white(", " + (stats[i + 3] * 20) + "ms receive delay, "
+                                + (packets > 0 ? String.format("%.1f", 100.0 * stats[i + 5] / packets) : "0.0") + "% lost")
+                );
+            }
+            long[] sendStats = bot.sendQueueStats();
+            if (sendStats == null) continue;
+            for (int i = 0; i + 5 < sendStats.length; i += 6) {
+                UUID playerId = new UUID(sendStats[i], sendStats[i + 1]);
+                var connection = api.getConnectionOf(playerId);
+                String name = connection != null && connection.getPlayer() != null ? platform.getName(connection.getPlayer()) : playerId.toString();
+                platform.sendMessage(
+                        sender,
+                        Component.aqua("  " + name + " -> Discord: "),
+                        Component.white((sendStats[i + 2] * 20) + "ms buffered, " + (sendStats[i + 3] * 20) + "ms target delay, "
+                                + sendStats[i + 4] + " late, " + sendStats[i + 5] + " lost")
+                );
+            }
+        }
+        if (!anyRunning) {
+            platform.sendMessage(sender, Component.gray("No bots are bridging a Discord channel."));
+        }
+    }
+
     /**
      * /cutaway <delay_seconds> <return_seconds>
      * OP-only command that teleports everyone in the group to the command sender's location,
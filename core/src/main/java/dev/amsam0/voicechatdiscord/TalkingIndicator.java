@@ -0,0 +1,145 @@
+package dev.amsam0.voicechatdiscord;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static dev.amsam0.voicechatdiscord.Core.platform;
+
+/**
+ * Shows which Discord users are talking in the action bar of every group member.
+ * The audio dispatcher only stamps a last-heard time per speaker handle; a low-rate timer diffs the
+ * talking set and renders the action bar only when it changed or the 2s refresh is due.
+ */
+final class TalkingIndicator {
+    private static final java.util.Timer timer = new java.util.Timer("DiscordTalkingIndicator", true);
+    private static final long TICK_MS = 100;
+    // A speaker counts as talking while their packets keep arriving within this window
+    private static final long TALKING_WINDOW_MS = 150;
+    private static final long REFRESH_MS = 2000;
+
+    private final SpeakerTable speakers;
+    // Last-heard time (ms) by speaker handle; 0 = never. Replaced only by the dispatcher thread when growing.
+    private volatile AtomicLongArray lastHeard = new AtomicLongArray(16);
+
+    // Timer-thread state: the talking set last shown, and a scratch set for the current tick
+    private long[] shownBits = new long[1];
+    private long[] currentBits = new long[1];
+    private long lastSentTime = 0L;
+    private java.util.TimerTask task;
+
+    TalkingIndicator(SpeakerTable speakers) {
+        this.speakers = speakers;
+    }
+
+    /**
+     * Records that a speaker was heard. Must only be called from the audio dispatcher thread.
+     */
+    void mark(int handle, long nowMs) {
+        if (handle < 0) return;
+        AtomicLongArray heard = lastHeard;
+        if (handle >= heard.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max(handle + 1, heard.length() * 2));
+            for (int i = 0; i < heard.length(); i++) grown.set(i, heard.get(i));
+            lastHeard = heard = grown;
+        }
+        heard.lazySet(handle, nowMs);
+    }
+
+    /**
+     * Starts refreshing the action bar of the given group's players, replacing any previous group.
+     */
+    synchronized void start(UUID groupId) {
+        stop();
+        task = new java.util.TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    tick(groupId);
+                } catch (Throwable t) {
+                    platform.error("Error updating Discord talking indicator for group " + groupId, t);
+                }
+            }
+        };
+        timer.scheduleAtFixedRate(task, TICK_MS, TICK_MS);
+    }
+
+    synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick(UUID groupId) {
+        long now = System.currentTimeMillis();
+        AtomicLongArray heard = lastHeard;
+        int handles = heard.length();
+        int words = (handles + 63) >>> 6;
+        if (currentBits.length < words) {
+            currentBits = new long[words];
+            shownBits = Arrays.copyOf(shownBits, words);
+        } else {
+            Arrays.fill(currentBits, 0L);
+        }
+        boolean anyTalking = false;
+        for (int handle = 0; handle < handles; handle++) {
+            long heardAt = heard.get(handle);
+            if (heardAt != 0L && now - heardAt <= TALKING_WINDOW_MS) {
+                currentBits[handle >>> 6] |= 1L << handle;
+                anyTalking = true;
+            }
+        }
+
+        // Only update action bar if the set of talking users changed, or every 2.0s
+        boolean changed = !Arrays.equals(currentBits, shownBits);
+        if (!changed && !(anyTalking && now - lastSentTime > REFRESH_MS)) return;
+        long[] shown = currentBits;
+        currentBits = shownBits;
+        shownBits = shown;
+        lastSentTime = now;
+
+        var players = GroupManager.groupPlayerMap.get(groupId);
+        if (players == null || players.isEmpty()) return;
+        Component[] msg = render(shown);
+        for (var serverPlayer : players) {
+            platform.sendActionBar(serverPlayer, msg);
+        }
+    }
+
+    private Component[] render(long[] bits) {
+        java.util.List<String> talkingUsers = new java.util.ArrayList<>();
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0L) {
+                int handle = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                String name = speakers.name(handle);
+                if (!talkingUsers.contains(name)) talkingUsers.add(name);
+            }
+        }
+        // Sort usernames alphabetically for display
+        talkingUsers.sort(String.CASE_INSENSITIVE_ORDER);
+
+        if (talkingUsers.isEmpty()) {
+            return new Component[] { Component.blue("") };
+        }
+        if (talkingUsers.size() == 1) {
+            return new Component[] {
+                Component.gold(talkingUsers.get(0)),
+                Component.green(" is talking")
+            };
+        }
+        java.util.List<Component> msgList = new java.util.ArrayList<>();
+        for (int i = 0; i < talkingUsers.size(); i++) {
+            if (i > 0) msgList.add(Component.white(", "));
+            msgList.add(Component.gold(talkingUsers.get(i)));
+        }
+        msgList.add(Component.green(" are talking"));
+        return msgList.toArray(new Component[0]);
+    }
+}
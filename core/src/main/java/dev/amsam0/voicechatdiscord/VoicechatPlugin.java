@@ -33,6 +33,7 @@ public abstract class VoicechatPlugin implements de.maxhenkel.voicechat.api.Voic
         registration.registerEvent(LeaveGroupEvent.class, GroupManager::onLeaveGroup);
         registration.registerEvent(CreateGroupEvent.class, GroupManager::onGroupCreated);
         registration.registerEvent(RemoveGroupEvent.class, GroupManager::onGroupRemoved);
+        registration.registerEvent(PlayerStateChangedEvent.class, GroupManager::onPlayerStateChanged);
 
         // Bridge Minecraft group audio to Discord
         registration.registerEvent(MicrophonePacketEvent.class, DiscordBot::handleGroupMicrophonePacketEvent);
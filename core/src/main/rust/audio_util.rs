@@ -5,16 +5,12 @@ use tracing::{warn};
 pub const OPUS_SAMPLE_RATE: u32 = 48_000;
 pub const OPUS_CHANNELS: Channels = Channels::Mono;
 
-pub const SAMPLE_RATE: u32 = OPUS_SAMPLE_RATE;
-pub const CHANNELS: u32 = OPUS_CHANNELS as i32 as u32;
-
-pub const MAX_AUDIO_BUFFER: usize = 50;
 pub const RAW_AUDIO_SIZE: usize = 960;
 
 /// 20 ms of 16-bit PCM
 pub type RawAudio = [i16; RAW_AUDIO_SIZE];
 
-pub fn combine_audio_parts(parts: Vec<RawAudio>) -> RawAudio {
+pub fn combine_audio_parts(parts: &[RawAudio]) -> RawAudio {
     // Based on https://github.com/DV8FromTheWorld/JDA/blob/11c5bf02a1f4df3372ab68e0ccb4a94d0db368df/src/main/java/net/dv8tion/jda/internal/audio/AudioConnection.java#L529
     let Some(max_length) = parts.iter().map(|p| p.len()).max() else {
         return [0; RAW_AUDIO_SIZE];
@@ -27,7 +23,7 @@ pub fn combine_audio_parts(parts: Vec<RawAudio>) -> RawAudio {
             break;
         }
         sample = 0;
-        for part in &parts {
+        for part in parts {
             // We don't need to check part.len() against i, because,
             // unlike Java, we have a guarantee part is of length
             // RAW_AUDIO_SIZE and we already checked that i isn't above that 😎
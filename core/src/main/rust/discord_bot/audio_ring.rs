@@ -0,0 +1,457 @@
+//! Discord -> Minecraft audio ring shared with Java as a direct `ByteBuffer`.
+//!
+//! The memory is owned by the bot and lives exactly as long as it does; Java
+//! wraps it once (see `_audioRingBuffer`) and reads records in place, so no
+//! Java objects are created per packet.
+//!
+//! Layout (native byte order):
+//! - `[0..8)`   write position, published by the voice handler (release)
+//! - `[8..16)`  read position, published by the Java consumer (release)
+//! - `[16..24)` records dropped because the consumer fell behind
+//! - `[64..)`   record data, `RING_DATA_SIZE` bytes
+//!
+//! Positions are monotonically increasing byte counts; the data offset is
+//! `pos & (RING_DATA_SIZE - 1)`. Every record starts 4-byte aligned with a
+//! signed `i32` length covering the whole record. A negative length marks
+//! padding up to the end of the data area, so records never wrap.
+//!
+//! Audio record: `[i32 len][u16 seq][u16 opus_len][i32 speaker handle][u32 tick][opus bytes]`
+//!
+//! `tick` numbers the VoiceTick the record came from; all records of one tick
+//! are one 20ms frame, which Java uses to pace delivery.
+//!
+//! An `opus_len` of `END_OF_BURST` (with no payload) marks the end of a
+//! speaker's burst of speech, so Java can flush that speaker's channels.
+//!
+//! The data area doubles as the receive path's payload pool: the voice handler
+//! copies each RTP payload exactly once, straight from songbird's packet into
+//! its record slot, and slots are recycled as soon as Java advances the read
+//! position. Nothing on the writer side allocates once every speaker's queue
+//! has been created.
+//!
+//! Each speaker has a bounded share of the ring: records not yet consumed by
+//! Java are tracked per speaker handle, and when a speaker exceeds its queue
+//! the configured `DropPolicy` decides what is lost. Dropping an already
+//! written record rewrites its handle to `DROPPED_SPEAKER` in place, which
+//! Java skips. A bursty speaker therefore can't evict anyone else's audio.
+//!
+//! A single Java dispatcher serves every bot's ring. It blocks on the
+//! process-wide `AUDIO_READY` generation, which every commit bumps, and then
+//! scans the rings for new data.
+
+use std::{
+    collections::{HashMap, VecDeque},
+    sync::atomic::{AtomicU32, AtomicU64, AtomicU8, Ordering},
+    time::Duration,
+};
+
+use once_cell::sync::Lazy;
+use parking_lot::{Condvar, Mutex};
+
+pub const RING_HEADER_SIZE: usize = 64;
+pub const RING_DATA_SIZE: usize = 64 * 1024;
+pub const RECORD_HEADER_SIZE: usize = 16;
+
+const WRITE_POS_WORD: usize = 0;
+const READ_POS_WORD: usize = 1;
+const DROPPED_WORD: usize = 2;
+
+const _: () = assert!(RING_DATA_SIZE.is_power_of_two());
+
+/// Handle written over a record that was dropped after being written.
+pub const DROPPED_SPEAKER: i32 = -1;
+
+/// `opus_len` of a record marking the end of a speaker's burst of speech.
+pub const END_OF_BURST: u16 = u16::MAX;
+
+#[derive(Clone, Copy, PartialEq, Eq, Debug)]
+pub enum DropPolicy {
+    /// Drop the speaker's oldest queued frame to make room
+    DropOldest,
+    /// Drop the incoming frame
+    DropNewest,
+    /// Drop queued frames older than the max age (and the oldest when full)
+    Expire,
+}
+
+impl DropPolicy {
+    fn from_i32(value: i32) -> DropPolicy {
+        match value {
+            1 => DropPolicy::DropNewest,
+            2 => DropPolicy::Expire,
+            _ => DropPolicy::DropOldest,
+        }
+    }
+}
+
+/// Receive queue settings shared by all bots, set from the Java config.
+struct ReceiveQueuePolicy {
+    policy: AtomicU8,
+    max_frames: AtomicU32,
+    max_age_ms: AtomicU32,
+}
+
+static RECEIVE_QUEUE_POLICY: ReceiveQueuePolicy = ReceiveQueuePolicy {
+    policy: AtomicU8::new(0),
+    max_frames: AtomicU32::new(10),
+    max_age_ms: AtomicU32::new(200),
+};
+
+pub fn set_receive_queue_policy(policy: i32, max_frames: i32, max_age_ms: i32) {
+    let policy = DropPolicy::from_i32(policy);
+    RECEIVE_QUEUE_POLICY.policy.store(policy as u8, Ordering::Relaxed);
+    RECEIVE_QUEUE_POLICY.max_frames.store(max_frames.max(1) as u32, Ordering::Relaxed);
+    RECEIVE_QUEUE_POLICY.max_age_ms.store(max_age_ms.max(20) as u32, Ordering::Relaxed);
+    tracing::info!(?policy, max_frames, max_age_ms, "Updated Discord receive queue policy");
+}
+
+fn current_policy() -> (DropPolicy, usize, u64) {
+    (
+        DropPolicy::from_i32(RECEIVE_QUEUE_POLICY.policy.load(Ordering::Relaxed) as i32),
+        RECEIVE_QUEUE_POLICY.max_frames.load(Ordering::Relaxed) as usize,
+        RECEIVE_QUEUE_POLICY.max_age_ms.load(Ordering::Relaxed) as u64,
+    )
+}
+
+/// A record written for a speaker that Java may not have consumed yet.
+struct QueuedRecord {
+    pos: u64,
+    written_ms: u64,
+}
+
+struct SpeakerQueue {
+    records: VecDeque<QueuedRecord>,
+    dropped: u64,
+    /// Songbird's current playout depth for the speaker, in 20ms frames
+    playout_frames: u8,
+    /// VoiceTicks that had a packet for the speaker, and ones that found it lost
+    received: u64,
+    lost: u64,
+}
+
+impl SpeakerQueue {
+    fn new(max_frames: usize) -> SpeakerQueue {
+        SpeakerQueue {
+            // Sized up front so the steady state never grows it
+            records: VecDeque::with_capacity(max_frames + 1),
+            dropped: 0,
+            playout_frames: 0,
+            received: 0,
+            lost: 0,
+        }
+    }
+}
+
+/// Per-speaker receive queue counters, reported to Java.
+pub struct SpeakerQueueStats {
+    pub handle: i32,
+    pub depth: usize,
+    pub dropped: u64,
+    pub playout_frames: u8,
+    pub received: u64,
+    pub lost: u64,
+}
+
+/// Readiness shared by all rings.
+pub static AUDIO_READY: Lazy<AudioReadiness> = Lazy::new(|| AudioReadiness {
+    generation: AtomicU64::new(0),
+    wait_lock: Mutex::new(()),
+    ready: Condvar::new(),
+});
+
+pub struct AudioReadiness {
+    generation: AtomicU64,
+    wait_lock: Mutex<()>,
+    ready: Condvar,
+}
+
+impl AudioReadiness {
+    /// Bumps the generation and wakes the dispatcher.
+    pub fn notify(&self) {
+        self.generation.fetch_add(1, Ordering::Release);
+        // Taking the lock orders this notify after a waiter's final generation
+        // check, so the wakeup can't be lost.
+        drop(self.wait_lock.lock());
+        self.ready.notify_all();
+    }
+
+    /// Blocks until the generation differs from `last_generation`, or until
+    /// `timeout` elapses if one is given. Returns the current generation
+    /// either way. Without a timeout an idle dispatcher stays parked until a
+    /// ring publishes audio or Java wakes it explicitly.
+    pub fn wait(&self, last_generation: u64, timeout: Option<Duration>) -> u64 {
+        let generation = self.generation.load(Ordering::Acquire);
+        if generation != last_generation {
+            return generation;
+        }
+        let mut guard = self.wait_lock.lock();
+        let generation = self.generation.load(Ordering::Acquire);
+        if generation != last_generation {
+            return generation;
+        }
+        match timeout {
+            Some(timeout) => {
+                self.ready.wait_for(&mut guard, timeout);
+            }
+            None => self.ready.wait(&mut guard),
+        }
+        self.generation.load(Ordering::Acquire)
+    }
+}
+
+pub struct AudioRing {
+    /// Header followed by the data area. Stored as words so the header is
+    /// 8-byte aligned for the atomics Java accesses through a VarHandle.
+    mem: Box<[AtomicU64]>,
+    /// Writer-side per-speaker accounting; only contended by stats requests.
+    queues: Mutex<HashMap<i32, SpeakerQueue>>,
+}
+
+impl AudioRing {
+    pub fn new() -> AudioRing {
+        let words = (RING_HEADER_SIZE + RING_DATA_SIZE) / 8;
+        AudioRing {
+            mem: (0..words).map(|_| AtomicU64::new(0)).collect(),
+            queues: Mutex::new(HashMap::new()),
+        }
+    }
+
+    /// Base pointer of the shared memory, handed to Java.
+    pub fn as_ptr(&self) -> *mut u8 {
+        self.mem.as_ptr() as *mut u8
+    }
+
+    pub fn len(&self) -> usize {
+        RING_HEADER_SIZE + RING_DATA_SIZE
+    }
+
+    #[inline]
+    fn word(&self, index: usize) -> &AtomicU64 {
+        &self.mem[index]
+    }
+
+    pub fn write_pos(&self) -> u64 {
+        self.word(WRITE_POS_WORD).load(Ordering::Acquire)
+    }
+
+    pub fn dropped(&self) -> u64 {
+        self.word(DROPPED_WORD).load(Ordering::Relaxed)
+    }
+
+    /// Starts a batch of records. Only one writer (the voice handler of this
+    /// bot) may hold a batch at a time.
+    pub fn writer(&self, tick: u32, now_ms: u64) -> RingWriter<'_> {
+        let pos = self.word(WRITE_POS_WORD).load(Ordering::Relaxed);
+        let read_pos = self.word(READ_POS_WORD).load(Ordering::Acquire);
+        let (policy, max_frames, max_age_ms) = current_policy();
+        let mut queues = self.queues.lock();
+        for queue in queues.values_mut() {
+            forget_consumed(queue, read_pos);
+            if policy == DropPolicy::Expire {
+                self.expire(queue, now_ms, max_age_ms);
+            }
+        }
+        RingWriter {
+            ring: self,
+            queues,
+            start: pos,
+            pos,
+            read_pos,
+            now_ms,
+            tick,
+            policy,
+            max_frames,
+        }
+    }
+
+    /// Snapshot of every speaker's queue depth and drop count.
+    pub fn speaker_stats(&self) -> Vec<SpeakerQueueStats> {
+        let read_pos = self.word(READ_POS_WORD).load(Ordering::Acquire);
+        let queues = self.queues.lock();
+        queues
+            .iter()
+            .map(|(&handle, queue)| SpeakerQueueStats {
+                handle,
+                depth: queue.records.iter().filter(|r| r.pos >= read_pos).count(),
+                dropped: queue.dropped,
+                playout_frames: queue.playout_frames,
+                received: queue.received,
+                lost: queue.lost,
+            })
+            .collect()
+    }
+
+    fn expire(&self, queue: &mut SpeakerQueue, now_ms: u64, max_age_ms: u64) {
+        while let Some(oldest) = queue.records.front() {
+            if now_ms.saturating_sub(oldest.written_ms) <= max_age_ms {
+                break;
+            }
+            self.tombstone(oldest.pos);
+            queue.records.pop_front();
+            queue.dropped += 1;
+        }
+    }
+
+    /// Marks an already written record as dropped. Java either reads the old
+    /// handle (and still delivers it) or skips it; both are safe.
+    fn tombstone(&self, pos: u64) {
+        let handle_ptr = unsafe { self.data_ptr(pos).add(8) } as *const std::sync::atomic::AtomicI32;
+        // The handle field is 4-byte aligned, so this store is never torn.
+        unsafe { (*handle_ptr).store(DROPPED_SPEAKER, Ordering::Relaxed) };
+    }
+
+    /// Wakes the dispatcher without publishing data.
+    pub fn wake(&self) {
+        AUDIO_READY.notify();
+    }
+
+    #[inline]
+    fn data_ptr(&self, pos: u64) -> *mut u8 {
+        let offset = (pos as usize) & (RING_DATA_SIZE - 1);
+        unsafe { self.as_ptr().add(RING_HEADER_SIZE + offset) }
+    }
+}
+
+pub struct RingWriter<'a> {
+    ring: &'a AudioRing,
+    queues: parking_lot::MutexGuard<'a, HashMap<i32, SpeakerQueue>>,
+    start: u64,
+    pos: u64,
+    read_pos: u64,
+    now_ms: u64,
+    tick: u32,
+    policy: DropPolicy,
+    max_frames: usize,
+}
+
+impl RingWriter<'_> {
+    /// Appends one audio record, applying the speaker's queue limit first.
+    /// Returns false (and counts a drop) if the frame was dropped: either by
+    /// `DropPolicy::DropNewest`, or because the ring itself is full, in which
+    /// case newest audio is dropped so Java never observes a half-overwritten
+    /// record.
+    pub fn push_audio(&mut self, handle: i32, seq: u16, opus: &[u8]) -> bool {
+        let ring = self.ring;
+        let max_frames = self.max_frames;
+        let queue = self.queues.entry(handle).or_insert_with(|| SpeakerQueue::new(max_frames));
+        forget_consumed(queue, self.read_pos);
+        if queue.records.len() >= self.max_frames {
+            if self.policy == DropPolicy::DropNewest {
+                queue.dropped += 1;
+                return false;
+            }
+            while queue.records.len() >= self.max_frames {
+                let Some(oldest) = queue.records.pop_front() else { break };
+                ring.tombstone(oldest.pos);
+                queue.dropped += 1;
+            }
+        }
+
+        let opus_len = opus.len().min(u16::MAX as usize);
+        let record_len = align4(RECORD_HEADER_SIZE + opus_len);
+        let Some(at) = reserve(ring, &mut self.pos, self.read_pos, record_len) else {
+            ring.word(DROPPED_WORD).fetch_add(1, Ordering::Relaxed);
+            if let Some(queue) = self.queues.get_mut(&handle) {
+                queue.dropped += 1;
+            }
+            return false;
+        };
+        let ptr = self.ring.data_ptr(at);
+        unsafe {
+            write_i32(ptr, record_len as i32);
+            write_u16(ptr.add(4), seq);
+            write_u16(ptr.add(6), opus_len as u16);
+            write_i32(ptr.add(8), handle);
+            write_i32(ptr.add(12), self.tick as i32);
+            std::ptr::copy_nonoverlapping(opus.as_ptr(), ptr.add(RECORD_HEADER_SIZE), opus_len);
+        }
+        if let Some(queue) = self.queues.get_mut(&handle) {
+            queue.records.push_back(QueuedRecord { pos: at, written_ms: self.now_ms });
+        }
+        true
+    }
+
+    /// Records what songbird's playout buffer did for a speaker this tick: its
+    /// current depth, and whether the speaker's packet arrived or was lost.
+    pub fn note_playout(&mut self, handle: i32, playout_frames: u8, lost: bool) {
+        let max_frames = self.max_frames;
+        let queue = self.queues.entry(handle).or_insert_with(|| SpeakerQueue::new(max_frames));
+        queue.playout_frames = playout_frames;
+        if lost {
+            queue.lost += 1;
+        } else {
+            queue.received += 1;
+        }
+    }
+
+    /// Appends a header-only record saying the speaker stopped talking. It is
+    /// not counted against the speaker's queue, so queue limits never drop it.
+    pub fn push_end_of_burst(&mut self, handle: i32) -> bool {
+        let Some(at) = reserve(self.ring, &mut self.pos, self.read_pos, RECORD_HEADER_SIZE) else {
+            self.ring.word(DROPPED_WORD).fetch_add(1, Ordering::Relaxed);
+            return false;
+        };
+        let ptr = self.ring.data_ptr(at);
+        unsafe {
+            write_i32(ptr, RECORD_HEADER_SIZE as i32);
+            write_u16(ptr.add(4), 0);
+            write_u16(ptr.add(6), END_OF_BURST);
+            write_i32(ptr.add(8), handle);
+            write_i32(ptr.add(12), self.tick as i32);
+        }
+        true
+    }
+
+    /// Publishes every record written in this batch and wakes the dispatcher.
+    pub fn commit(self) {
+        let RingWriter { ring, queues, start, pos, .. } = self;
+        // Release the queues before waking so a stats request isn't blocked on us
+        drop(queues);
+        if pos == start {
+            return;
+        }
+        ring.word(WRITE_POS_WORD).store(pos, Ordering::Release);
+        ring.wake();
+    }
+}
+
+/// Reserves `len` contiguous bytes at `*pos`, inserting a padding record first
+/// if they would straddle the end of the data area.
+fn reserve(ring: &AudioRing, pos: &mut u64, read_pos: u64, len: usize) -> Option<u64> {
+    let offset = (*pos as usize) & (RING_DATA_SIZE - 1);
+    let tail = RING_DATA_SIZE - offset;
+    let pad = if tail < len { tail } else { 0 };
+    let needed = (pad + len) as u64;
+    if *pos + needed - read_pos > RING_DATA_SIZE as u64 {
+        return None;
+    }
+    if pad > 0 {
+        unsafe { write_i32(ring.data_ptr(*pos), -(pad as i32)) };
+        *pos += pad as u64;
+    }
+    let at = *pos;
+    *pos += len as u64;
+    Some(at)
+}
+
+/// Drops bookkeeping for records Java has already consumed.
+fn forget_consumed(queue: &mut SpeakerQueue, read_pos: u64) {
+    while queue.records.front().is_some_and(|r| r.pos < read_pos) {
+        queue.records.pop_front();
+    }
+}
+
+#[inline]
+fn align4(len: usize) -> usize {
+    (len + 3) & !3
+}
+
+#[inline]
+unsafe fn write_i32(ptr: *mut u8, value: i32) {
+    std::ptr::write_unaligned(ptr as *mut i32, value);
+}
+
+#[inline]
+unsafe fn write_u16(ptr: *mut u8, value: u16) {
+    std::ptr::write_unaligned(ptr as *mut u16, value);
+}
@@ -0,0 +1,114 @@
+//! Server-side mixing of Discord speakers for large groups.
+//!
+//! Normally every Discord speaker reaches every group member on their own
+//! StaticAudioChannel, which costs speakers x players packets per 20ms. In
+//! mixing mode the voice handler decodes the active speakers of each tick,
+//! mixes them with `combine_audio_parts` and re-encodes the result once, so
+//! Java only sends one packet per player. Java turns the mode on per bot
+//! (`_setMixingEnabled`) once speakers x players crosses the configured
+//! threshold.
+
+use std::collections::HashMap;
+
+use songbird::driver::opus::{Application, Decoder as OpusDecoder, Encoder as OpusEncoder};
+
+use crate::audio_util::{combine_audio_parts, RawAudio, OPUS_CHANNELS, OPUS_SAMPLE_RATE, RAW_AUDIO_SIZE};
+
+use super::ssrc_table::END_OF_BURST_TICKS;
+
+/// Speaker handle of records carrying the mix of all speakers.
+pub const MIXED_SPEAKER: i32 = -2;
+
+/// Largest Opus packet the encoder may produce (RFC 6716).
+const MAX_OPUS_PACKET: usize = 1275;
+
+/// Decoders for SSRCs not heard for this many ticks (5s) are dropped.
+const DECODER_IDLE_TICKS: u64 = 250;
+
+pub struct DiscordMixer {
+    /// Opus decoder per SSRC, with the last tick it decoded
+    decoders: HashMap<u32, (OpusDecoder, u64)>,
+    parts: Vec<RawAudio>,
+    encoder: Option<OpusEncoder>,
+    encoded: [u8; MAX_OPUS_PACKET],
+    sequence: u16,
+    /// Last tick a mixed packet was produced (0 = none yet)
+    last_output_tick: u64,
+}
+
+impl DiscordMixer {
+    pub fn new() -> DiscordMixer {
+        DiscordMixer {
+            decoders: HashMap::new(),
+            parts: Vec::new(),
+            encoder: None,
+            encoded: [0; MAX_OPUS_PACKET],
+            sequence: 0,
+            last_output_tick: 0,
+        }
+    }
+
+    /// Decodes one tick's `(ssrc, opus)` frames, mixes them and encodes the
+    /// mix. Returns the mixed packet's sequence number and Opus data, or
+    /// `None` if nothing could be decoded.
+    pub fn mix<'a>(&mut self, tick: u64, frames: impl Iterator<Item = (u32, &'a [u8])>) -> Option<(u16, &[u8])> {
+        self.parts.clear();
+        for (ssrc, opus) in frames {
+            if opus.is_empty() {
+                continue;
+            }
+            let (decoder, last_tick) = match self.decoders.entry(ssrc) {
+                std::collections::hash_map::Entry::Occupied(entry) => entry.into_mut(),
+                std::collections::hash_map::Entry::Vacant(entry) => match OpusDecoder::new(OPUS_SAMPLE_RATE, OPUS_CHANNELS) {
+                    Ok(decoder) => entry.insert((decoder, tick)),
+                    Err(e) => {
+                        tracing::error!(?e, "Unable to create Opus decoder for Discord mixing");
+                        continue;
+                    }
+                },
+            };
+            *last_tick = tick;
+            let mut pcm = [0i16; RAW_AUDIO_SIZE];
+            match decoder.decode(opus, &mut pcm[..], false) {
+                Ok(_) => self.parts.push(pcm),
+                Err(e) => tracing::debug!(?e, ssrc, "Opus decode failed while mixing Discord audio"),
+            }
+        }
+
+        if tick % DECODER_IDLE_TICKS == 0 {
+            self.decoders.retain(|_, (_, last_tick)| tick - *last_tick < DECODER_IDLE_TICKS);
+        }
+        if self.parts.is_empty() {
+            return None;
+        }
+
+        let mixed = combine_audio_parts(&self.parts);
+        if self.encoder.is_none() {
+            match OpusEncoder::new(OPUS_SAMPLE_RATE, OPUS_CHANNELS, Application::Audio) {
+                Ok(encoder) => self.encoder = Some(encoder),
+                Err(e) => {
+                    tracing::error!(?e, "Unable to create Opus encoder for Discord mixing");
+                    return None;
+                }
+            }
+        }
+        let encoder = self.encoder.as_mut()?;
+        match encoder.encode(&mixed, &mut self.encoded) {
+            Ok(len) => {
+                self.sequence = self.sequence.wrapping_add(1);
+                self.last_output_tick = tick;
+                Some((self.sequence, &self.encoded[..len]))
+            }
+            Err(e) => {
+                tracing::error!(?e, "Opus encode failed while mixing Discord audio");
+                None
+            }
+        }
+    }
+
+    /// Whether the mixed stream went quiet at this tick: true once, when no
+    /// speaker has been heard for `END_OF_BURST_TICKS` ticks.
+    pub fn burst_ended(&self, tick: u64) -> bool {
+        self.last_output_tick != 0 && self.last_output_tick + END_OF_BURST_TICKS == tick
+    }
+}
@@ -5,57 +5,80 @@ use discortp::{
 use serenity::all::{ChannelId};
 use songbird::{Event, EventContext, EventHandler};
 
-use std::collections::{VecDeque, HashMap};
-use std::sync::Mutex;
+use super::audio_ring::RingWriter;
+use super::discord_mix::{DiscordMixer, MIXED_SPEAKER};
+use super::ssrc_table::{SsrcTable, UNORDERED};
 
+/// Speakers per tick that get a stable order; any beyond this (never seen in
+/// practice) are delivered first, in arbitrary order, or mixed in after the
+/// ordered ones in mixing mode.
+const MAX_ORDERED_SPEAKERS: usize = 64;
+
+#[derive(Clone, Copy)]
+struct TickFrame<'a> {
+    order: u64,
+    ssrc: u32,
+    handle: i32,
+    seq: u16,
+    opus: &'a [u8],
+}
 
 #[derive(Clone)]
 pub struct VoiceHandler {
     pub vc_id: ChannelId,
     pub bot: std::sync::Arc<super::DiscordBot>,
-    pub ssrc_username_map: std::sync::Arc<Mutex<HashMap<u32, String>>>,
-    pub ssrc_user_id_map: std::sync::Arc<Mutex<HashMap<u32, u64>>>,
-    pub last_ssrc_order: std::sync::Arc<Mutex<VecDeque<u32>>>,
+    /// SSRC -> speaker handle (see `speakers.rs`) and the stable speaking order
+    pub ssrcs: std::sync::Arc<SsrcTable>,
+    /// Decoders and encoder for mixing mode; only the tick path locks it
+    pub mixer: std::sync::Arc<parking_lot::Mutex<DiscordMixer>>,
+}
+
+impl VoiceHandler {
+    /// Tells Java a speaker's burst of speech is over once their gap in the
+    /// VoiceTick data reaches `END_OF_BURST_TICKS`.
+    fn end_burst_if_over(&self, writer: &mut RingWriter<'_>, ssrc: u32, tick_no: u64) {
+        if let Some(slot) = self.ssrcs.find(ssrc) {
+            if self.ssrcs.burst_ended(slot, tick_no) {
+                writer.push_end_of_burst(self.ssrcs.handle(slot));
+            }
+        }
+    }
 }
 
 #[serenity::async_trait]
 impl EventHandler for VoiceHandler {
     #[tracing::instrument(skip(self, ctx), fields(self.vc_id = %self.vc_id))]
     async fn act(&self, ctx: &EventContext<'_>) -> Option<Event> {
-        // Handle SpeakingStateUpdate events to update SSRC->username map
+        // Handle SpeakingStateUpdate events to map SSRCs to speaker handles
         if let EventContext::SpeakingStateUpdate(speaking) = ctx {
             if let Some(user_id) = speaking.user_id {
                 // Only update if this SSRC is not already mapped
-                let already_mapped = {
-                    let map = self.ssrc_username_map.lock().unwrap();
-                    map.contains_key(&speaking.ssrc)
-                };
-                if !already_mapped {
+                if !self.ssrcs.contains(speaking.ssrc) {
                     if let Some(username) = self.bot.lookup_username(user_id.0) {
-                        let mut username_map = self.ssrc_username_map.lock().unwrap();
-                        let mut user_id_map = self.ssrc_user_id_map.lock().unwrap();
-                        username_map.insert(speaking.ssrc, username);
-                        user_id_map.insert(speaking.ssrc, user_id.0);
+                        // Java learns the handle before any audio references it
+                        let handle = self.bot.register_speaker(user_id.0, username).await;
+                        self.ssrcs.insert(speaking.ssrc, handle);
                     }
                 }
             }
         }
         if let EventContext::VoiceTick(tick) = ctx {
-            let buffer = &self.bot.discord_to_mc_buffer;
-            if buffer.received_audio_tx.is_full() {
-                // The consumer is behind. Drop the OLDEST tick (not this one) so
-                // the bridge stays near-realtime and recovers as soon as the
-                // consumer catches up, instead of freezing 1s in the past.
-                let _ = buffer.received_audio_rx.try_recv();
-                tracing::warn!("VoiceHandler receive buffer is full for vc_id={}; dropped oldest tick", self.vc_id);
-            }
-            // Maintain a stable SSRC order for this frame, appending new SSRCs to the end.
-            let mut ssrc_order = self.last_ssrc_order.lock().unwrap();
-            let mut new_order = VecDeque::new();
-            let mut payload_map = std::collections::HashMap::new();
-            // Collect all current SSRCs and their data
+            let tick_no = self.ssrcs.begin_tick();
+            let mut frames = [TickFrame { order: 0, ssrc: 0, handle: 0, seq: 0, opus: &[] }; MAX_ORDERED_SPEAKERS];
+            let mut frame_count = 0;
+            // Frames past MAX_ORDERED_SPEAKERS in mixing mode; they must reach the
+            // mix too, and the Vec only allocates if that ever happens
+            let mut overflow: Vec<TickFrame> = Vec::new();
+            let mixing = self.bot.mix_discord_audio.load(std::sync::atomic::Ordering::Relaxed);
+            let mut writer = self.bot.discord_to_mc_ring.writer(tick_no as u32, super::watchdog::now_ms());
+            let mut dropped = 0;
             for (&ssrc, data) in tick.speaking.iter() {
                 let Some(packet) = data.packet.as_ref() else {
+                    // Known speaker, but nothing arrived in time for this tick
+                    if let Some(slot) = self.ssrcs.find(ssrc) {
+                        writer.note_playout(self.ssrcs.handle(slot), data.playout_length, true);
+                    }
+                    self.end_burst_if_over(&mut writer, ssrc, tick_no);
                     continue;
                 };
                 let Some(rtp) = RtpPacket::new(&packet.packet) else {
@@ -63,8 +86,10 @@ impl EventHandler for VoiceHandler {
                     continue;
                 };
                 let extension = rtp.get_extension() != 0;
-                let payload = rtp.payload();
-                let payload = &payload[packet.payload_offset..packet.payload_end_pad];
+                // Slice the payload from the packet itself (not the parsed view)
+                // so the frame can borrow it until the end of the tick.
+                let payload_start = rtp.payload().as_ptr() as usize - packet.packet.as_ptr() as usize;
+                let payload = &packet.packet[payload_start + packet.payload_offset..payload_start + packet.payload_end_pad];
                 let start = if extension {
                     match RtpExtensionPacket::new(payload).map(|pkt| pkt.packet_size()) {
                         Some(s) => s,
@@ -76,49 +101,70 @@ impl EventHandler for VoiceHandler {
                 } else {
                     0
                 };
-                let payload = payload[start..].to_vec();
-                payload_map.insert(ssrc, payload);
+                let (handle, order) = match self.ssrcs.find(ssrc) {
+                    Some(slot) => (self.ssrcs.handle(slot), self.ssrcs.order_key(slot, tick_no)),
+                    None => (super::speakers::UNKNOWN_SPEAKER, UNORDERED),
+                };
+                writer.note_playout(handle, data.playout_length, false);
+                let frame = TickFrame {
+                    order,
+                    ssrc,
+                    handle,
+                    seq: rtp.get_sequence().0 .0,
+                    opus: &payload[start..],
+                };
+                if frame_count < MAX_ORDERED_SPEAKERS {
+                    frames[frame_count] = frame;
+                    frame_count += 1;
+                } else if mixing {
+                    overflow.push(frame);
+                } else if !writer.push_audio(frame.handle, frame.seq, frame.opus) {
+                    dropped += 1;
+                }
             }
 
-            if !payload_map.is_empty() {
+            if frame_count > 0 {
                 // Parseable audio arrived; lets the corruption watchdog tell
                 // healthy bots apart from ones whose receive path went silent.
                 self.bot.mark_audio_received();
             }
 
-            // Build the new order: keep previous order for still-active SSRCs, append new ones at the end
-            for &ssrc in ssrc_order.iter() {
-                if payload_map.contains_key(&ssrc) {
-                    new_order.push_back(ssrc);
+            // Speakers that kept talking keep their place; new ones follow in arrival order
+            let frames = &mut frames[..frame_count];
+            frames.sort_unstable_by_key(|frame| frame.order);
+            if mixing {
+                // Mixing mode: one mixed record for the whole tick, plus an empty
+                // record per speaker so Java still knows who is talking
+                for frame in frames.iter().chain(overflow.iter()) {
+                    writer.push_audio(frame.handle, frame.seq, &[]);
                 }
-            }
-            for &ssrc in payload_map.keys() {
-                if !new_order.contains(&ssrc) {
-                    new_order.push_back(ssrc);
+                let mut mixer = self.mixer.lock();
+                let mixed = frames.iter().chain(overflow.iter()).map(|frame| (frame.ssrc, frame.opus));
+                if let Some((seq, opus)) = mixer.mix(tick_no, mixed) {
+                    if !writer.push_audio(MIXED_SPEAKER, seq, opus) {
+                        dropped += 1;
+                    }
                 }
-            }
-            // Update the static order for next frame
-            *ssrc_order = new_order.clone();
-
-            let mut user_payloads = Vec::new();
-            for &ssrc in new_order.iter() {
-                if let Some(payload) = payload_map.get(&ssrc) {
-                    let (username, user_id) = {
-                        let username_map = self.ssrc_username_map.lock().unwrap();
-                        let user_id_map = self.ssrc_user_id_map.lock().unwrap();
-                        let username = username_map.get(&ssrc).cloned().unwrap_or_else(|| "Unknown User".to_string());
-                        let user_id = user_id_map.get(&ssrc).copied().unwrap_or(0);
-                        (username, user_id)
-                    };
-                    user_payloads.push((username, user_id, payload.clone()));
+                if mixer.burst_ended(tick_no) {
+                    writer.push_end_of_burst(MIXED_SPEAKER);
                 }
-            }
-
-            if !user_payloads.is_empty() {
-                if buffer.received_audio_tx.send(user_payloads).is_err() {
-                    tracing::error!("VoiceHandler: received_audio_tx dropped for vc_id={}; bot may have been stopped or freed", self.vc_id);
+            } else {
+                for frame in frames.iter() {
+                    if !writer.push_audio(frame.handle, frame.seq, frame.opus) {
+                        dropped += 1;
+                    }
                 }
             }
+            for &ssrc in tick.silent.iter() {
+                self.end_burst_if_over(&mut writer, ssrc, tick_no);
+            }
+            writer.commit();
+            if dropped > 0 {
+                // Either the consumer is behind and the ring is full, or a
+                // speaker hit its queue limit under DropNewest. Per-speaker
+                // counts are available through the receive queue stats.
+                tracing::debug!("VoiceHandler dropped {} incoming packet(s) for vc_id={}", dropped, self.vc_id);
+            }
         }
         None
     }
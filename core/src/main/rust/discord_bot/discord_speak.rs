@@ -1,3 +1,13 @@
+//! Minecraft -> Discord audio source played into the call.
+//!
+//! The source is a DCA1 stream (`[i16 len][opus]` per 20ms frame after a
+//! small header), which songbird reads with its own `DcaReader` and forwards
+//! to Discord as-is through its Opus passthrough. When exactly one player is
+//! speaking, their Opus packet is copied into the stream untouched. Only
+//! when several players have to be mixed are their packets decoded, summed
+//! and encoded once with our own encoder. Nothing is converted to f32 or
+//! re-encoded by songbird.
+
 use std::{
     io::{self},
     sync::Arc,
@@ -9,45 +19,77 @@ use eyre::{Context, Report};
 use songbird::input::{
     codecs::{get_codec_registry, get_probe},
     core::io::MediaSource,
-    Input, RawAdapter,
+    AudioStream, Input, LiveInput,
 };
 
-use crate::audio_util::{CHANNELS, SAMPLE_RATE};
-use crate::audio_util::{OPUS_SAMPLE_RATE, OPUS_CHANNELS};
+use crate::audio_util::{OPUS_SAMPLE_RATE, OPUS_CHANNELS, RawAudio, RAW_AUDIO_SIZE};
 use once_cell::sync::Lazy;
-use crate::discord_bot::PlayerToDiscordBuffer;
+use crate::discord_bot::PlayerSlots;
+use crate::discord_bot::mic_ring::MicRing;
 use crate::discord_bot::playout_buffer::PacketLookup;
-use songbird::driver::opus::Decoder as OpusDecoder;
-use std::collections::HashMap;
+use songbird::driver::opus::{Application, Decoder as OpusDecoder, Encoder as OpusEncoder};
+use songbird::driver::Bitrate;
 use std::sync::Mutex;
 
+const FRAME_DURATION: std::time::Duration = std::time::Duration::from_millis(20);
+/// Longest the source sleeps without a packet before rechecking shutdown
+const IDLE_WAIT: std::time::Duration = std::time::Duration::from_secs(1);
+/// Largest Opus packet (RFC 6716)
+const MAX_OPUS_PACKET: usize = 1275;
+/// One DCA frame: `i16` length prefix and the Opus packet
+const MAX_FRAME_BYTES: usize = 2 + MAX_OPUS_PACKET;
+/// Bitrate of mixed frames: voice, with headroom for several players at once
+const MIXED_BITRATE: i32 = 64_000;
+/// Opus packet of 20ms of silence
+const SILENT_OPUS_FRAME: [u8; 3] = [0xF8, 0xFF, 0xFE];
+/// DCA1 metadata block; songbird's `DcaReader` requires the `dca` and `opus` sections
+const DCA_METADATA: &str = r#"{"dca":{"version":1,"tool":{"name":"voicechat-discord","version":"1"}},"opus":{"mode":"voip","sample_rate":48000,"frame_size":960,"vbr":true,"channels":1}}"#;
+
+const _: () = assert!(8 + DCA_METADATA.len() <= MAX_FRAME_BYTES);
+
 
 #[inline]
 pub fn create_playable_input(
-    player_to_discord_buffers: Arc<dashmap::DashMap<Uuid, PlayerToDiscordBuffer>>,
+    player_to_discord_buffers: Arc<PlayerSlots>,
+    mic_ring: Arc<MicRing>,
     shutdown: Arc<AtomicBool>,
 ) -> Result<(Input, Uuid), Report> {
     let should_send_silence = Arc::new(AtomicBool::new(false));
     let audio_source_id = Uuid::new_v4();
-    let audio_source = PlayerAudioSource {
+    // Anything queued while no call was playing is stale
+    mic_ring.discard();
+    let wake_ring = Arc::clone(&mic_ring);
+    let mut audio_source = PlayerAudioSource {
         player_to_discord_buffers,
+        mic_ring,
         next_frame_time: None,
         last_frame_sent: None,
         prev_zero: false,
-        opus_decoders: Mutex::new(HashMap::new()),
+        opus_decoders: Mutex::new(Vec::new()),
+        opus_encoder: Mutex::new(None),
+        fetched: Vec::new(),
+        mix: [0; RAW_AUDIO_SIZE],
+        pcm: [0; RAW_AUDIO_SIZE],
+        frame: [0; MAX_FRAME_BYTES],
+        frame_len: 0,
+        frame_pos: 0,
+        playing: false,
         shutdown,
         should_send_silence: should_send_silence.clone(),
         silent_countdown: 0,
-        leftover: Vec::new(),
         _id: audio_source_id,
     };
+    // The DCA header is served before any frame, so probing never waits for audio
+    let header_len = 8 + DCA_METADATA.len();
+    audio_source.frame[..4].copy_from_slice(b"DCA1");
+    audio_source.frame[4..8].copy_from_slice(&(DCA_METADATA.len() as u32).to_le_bytes());
+    audio_source.frame[8..header_len].copy_from_slice(DCA_METADATA.as_bytes());
+    audio_source.frame_len = header_len;
     // Register this audio source globally
-    AUDIO_SOURCE_REGISTRY.insert(audio_source_id, should_send_silence);
-    let input: Input = RawAdapter::new(audio_source, SAMPLE_RATE, CHANNELS).into();
-    let input = match input {
-        Input::Live(i, _) => i,
-        _ => unreachable!("From<RawAdapter> for Input always gives Input::Live"),
-    };
+    AUDIO_SOURCE_REGISTRY.insert(audio_source_id, (should_send_silence, wake_ring));
+    let input = LiveInput::Raw(AudioStream {
+        input: Box::new(audio_source) as Box<dyn MediaSource>,
+    });
     let parsed = input
         .promote(get_codec_registry(), get_probe())
         .wrap_err("Unable to promote input")?;
@@ -56,64 +98,202 @@ pub fn create_playable_input(
 
 
 struct PlayerAudioSource {
-    player_to_discord_buffers: Arc<dashmap::DashMap<Uuid, PlayerToDiscordBuffer>>,
+    player_to_discord_buffers: Arc<PlayerSlots>,
+    mic_ring: Arc<MicRing>,
     next_frame_time: Option<std::time::Instant>,
     last_frame_sent: Option<std::time::Instant>,
     prev_zero: bool,
-    opus_decoders: Mutex<HashMap<Uuid, OpusDecoder>>,
+    /// Decoders indexed by player slot, tagged with the slot generation they
+    /// were created for, and the encoder for mixed frames.
+    /// Only the reading thread touches them, through `get_mut`, so the
+    /// mutexes are never locked; they only make the source `Sync` as
+    /// `MediaSource` requires (opus2 codecs are not).
+    opus_decoders: Mutex<Vec<(u32, OpusDecoder)>>,
+    opus_encoder: Mutex<Option<OpusEncoder>>,
+    /// Packets fetched for the frame being built, by player slot
+    fetched: Vec<(usize, PacketLookup)>,
+    /// Sum of every player's samples for the frame being mixed
+    mix: [i32; RAW_AUDIO_SIZE],
+    /// One player's decoded samples, then the clamped mix
+    pcm: RawAudio,
+    /// The DCA frame (or header) being read, served from `frame_pos`
+    frame: [u8; MAX_FRAME_BYTES],
+    frame_len: usize,
+    frame_pos: usize,
+    /// Whether any player's buffer was playing out in the last frame
+    playing: bool,
     shutdown: Arc<AtomicBool>,
     should_send_silence: Arc<AtomicBool>,
     silent_countdown: u8,
-    leftover: Vec<u8>,
     _id: Uuid,
 }
 
-// Global registry of all PlayerAudioSource's should_send_silence flags
-static AUDIO_SOURCE_REGISTRY: Lazy<dashmap::DashMap<Uuid, Arc<AtomicBool>>> = Lazy::new(|| dashmap::DashMap::new());
+// Global registry of all PlayerAudioSource's should_send_silence flags, with the ring each one sleeps on
+static AUDIO_SOURCE_REGISTRY: Lazy<dashmap::DashMap<Uuid, (Arc<AtomicBool>, Arc<MicRing>)>> = Lazy::new(|| dashmap::DashMap::new());
 
-/// Remove an audio source from the registry by UUID
+/// Remove an audio source from the registry by UUID, waking it if it is idle
 pub fn remove_audio_source(uuid: &Uuid) {
-    AUDIO_SOURCE_REGISTRY.remove(uuid);
+    if let Some((_, (_, mic_ring))) = AUDIO_SOURCE_REGISTRY.remove(uuid) {
+        mic_ring.wake();
+    }
 }
 
 /// Call this when a new bot starts to poke all other bots to send a single silent frame if stuck
 pub fn poke_all_audio_sources() {
     for entry in AUDIO_SOURCE_REGISTRY.iter() {
-        entry.value().store(true, Ordering::SeqCst);
+        let (should_send_silence, mic_ring) = entry.value();
+        should_send_silence.store(true, Ordering::SeqCst);
+        mic_ring.wake();
     }
 }
 
 
+fn new_opus_decoder() -> OpusDecoder {
+    OpusDecoder::new(OPUS_SAMPLE_RATE, OPUS_CHANNELS).expect("Failed to create Opus decoder")
+}
+
+impl PlayerAudioSource {
+    /// Moves every microphone packet Java queued since the last frame into the
+    /// player buffers.
+    fn drain_mic_ring(&self) {
+        let slots = &self.player_to_discord_buffers;
+        self.mic_ring.drain(|slot, generation, seq, arrival_ns, opus| {
+            slots.store(slot, generation, opus.len(), seq, arrival_ns, |dst| {
+                dst.copy_from_slice(opus);
+                true
+            });
+        });
+    }
+
+    /// Builds the next frame's Opus packet in `self.frame[2..]` and returns
+    /// its length, or None if no player is audible. A lone speaker's packet
+    /// is passed through; anything else is decoded, mixed and encoded.
+    fn next_opus_frame(&mut self) -> Option<usize> {
+        let slots = self.player_to_discord_buffers.read();
+        for (slot, buffer) in slots.iter().enumerate() {
+            if buffer.is_free() {
+                continue;
+            }
+            match buffer.playout_buffer.lock().unwrap().fetch_packet() {
+                PacketLookup::Filling => {}
+                packet => self.fetched.push((slot, packet)),
+            }
+        }
+        self.playing = !self.fetched.is_empty();
+
+        let out = &mut self.frame[2..];
+        let len = match self.fetched.as_slice() {
+            [] => None,
+            [(_, PacketLookup::Packet(pkt))] if pkt.opus.len() <= MAX_OPUS_PACKET => {
+                out[..pkt.opus.len()].copy_from_slice(&pkt.opus);
+                Some(pkt.opus.len())
+            }
+            fetched => {
+                let decoders = self.opus_decoders.get_mut().unwrap();
+                self.mix.fill(0);
+                let mut any_real_audio = false;
+                for (slot, packet) in fetched {
+                    let opus: &[u8] = match packet {
+                        PacketLookup::Packet(pkt) => &pkt.opus,
+                        // PLC: opus2 treats an empty input slice as "packet lost"
+                        _ => &[],
+                    };
+                    let generation = slots[*slot].generation;
+                    while decoders.len() <= *slot {
+                        decoders.push((generation, new_opus_decoder()));
+                    }
+                    let (decoder_generation, decoder) = &mut decoders[*slot];
+                    if *decoder_generation != generation {
+                        // The slot now belongs to another player; don't carry over the last one's state
+                        *decoder = new_opus_decoder();
+                        *decoder_generation = generation;
+                    }
+                    match decoder.decode(opus, &mut self.pcm[..], false) {
+                        Ok(_) => {
+                            for (mixed, sample) in self.mix.iter_mut().zip(self.pcm.iter()) {
+                                *mixed += *sample as i32;
+                                any_real_audio |= *sample != 0;
+                            }
+                        }
+                        Err(e) => tracing::error!(?e, "Opus decode failed for user {:?}", slots[*slot].player_id),
+                    }
+                }
+                if any_real_audio {
+                    // Clamp like combine_audio_parts
+                    for (sample, mixed) in self.pcm.iter_mut().zip(self.mix.iter()) {
+                        *sample = (*mixed).clamp(i16::MIN as i32, i16::MAX as i32) as i16;
+                    }
+                    let encoder = self.opus_encoder.get_mut().unwrap();
+                    if encoder.is_none() {
+                        match OpusEncoder::new(OPUS_SAMPLE_RATE, OPUS_CHANNELS, Application::Voip) {
+                            Ok(mut created) => {
+                                if let Err(e) = created.set_bitrate(Bitrate::Bits(MIXED_BITRATE)) {
+                                    tracing::warn!(?e, "Unable to set Opus bitrate for mixed Minecraft audio");
+                                }
+                                *encoder = Some(created);
+                            }
+                            Err(e) => tracing::error!(?e, "Unable to create Opus encoder for Minecraft audio"),
+                        }
+                    }
+                    match encoder.as_mut().map(|encoder| encoder.encode(&self.pcm, &mut out[..MAX_OPUS_PACKET])) {
+                        Some(Ok(len)) => Some(len),
+                        Some(Err(e)) => {
+                            tracing::error!(?e, "Opus encode failed for mixed Minecraft audio");
+                            None
+                        }
+                        None => None,
+                    }
+                } else {
+                    None
+                }
+            }
+        };
+
+        for (slot, packet) in self.fetched.drain(..) {
+            if let PacketLookup::Packet(pkt) = packet {
+                slots[slot].playout_buffer.lock().unwrap().recycle(pkt.opus);
+            }
+        }
+        len
+    }
+
+    /// Prefixes the Opus packet in `self.frame[2..]` with its DCA length and
+    /// serves as much of the frame as fits in `buf`. Returns the bytes written.
+    fn emit_frame(&mut self, buf: &mut [u8], opus_len: usize) -> usize {
+        self.frame[..2].copy_from_slice(&(opus_len as i16).to_le_bytes());
+        self.frame_len = 2 + opus_len;
+        self.frame_pos = 0;
+        self.serve_frame(buf)
+    }
+
+    fn serve_frame(&mut self, buf: &mut [u8]) -> usize {
+        let to_copy = std::cmp::min(buf.len(), self.frame_len - self.frame_pos);
+        buf[..to_copy].copy_from_slice(&self.frame[self.frame_pos..self.frame_pos + to_copy]);
+        self.frame_pos += to_copy;
+        to_copy
+    }
+}
+
 impl io::Read for PlayerAudioSource {
     fn read(&mut self, buf: &mut [u8]) -> io::Result<usize> {
         tracing::trace!(
             "PlayerAudioSource::read: shutdown={}, buf_size={}, leftover_len={}",
-            self.shutdown.load(Ordering::SeqCst), buf.len(), self.leftover.len()
+            self.shutdown.load(Ordering::SeqCst), buf.len(), self.frame_len - self.frame_pos
         );
         if self.shutdown.load(Ordering::SeqCst) {
             tracing::trace!("PlayerAudioSource::read: returning early due to shutdown, bytes=0");
             return Ok(0);
         }
 
-        // Serve leftover bytes first
-        if !self.leftover.is_empty() {
-            let to_copy = std::cmp::min(buf.len(), self.leftover.len());
-            buf[..to_copy].copy_from_slice(&self.leftover[..to_copy]);
-            if to_copy < self.leftover.len() {
-                self.leftover = self.leftover[to_copy..].to_vec();
-            } else {
-                self.leftover.clear();
-            }
+        // Serve the rest of the current frame (or the header) first
+        if self.frame_pos < self.frame_len {
+            let to_copy = self.serve_frame(buf);
             tracing::trace!("PlayerAudioSource::read: returning leftover bytes, bytes={}", to_copy);
             return Ok(to_copy);
         }
 
+        // One frame per read; while behind schedule, reads don't sleep until caught up
         let now = std::time::Instant::now();
-        const FRAME_DURATION: std::time::Duration = std::time::Duration::from_millis(20);
-        let frame_samples = 960; // 20ms @ 48kHz mono
-        let sample_bytes = std::mem::size_of::<f32>();
-        let frame_bytes = frame_samples * sample_bytes;
-
         let next_time = self.next_frame_time.unwrap_or(now);
         if next_time > now {
             let sleep_time = next_time - now;
@@ -122,25 +302,7 @@ impl io::Read for PlayerAudioSource {
             }
             std::thread::sleep(sleep_time);
         }
-        let now = std::time::Instant::now();
-        let elapsed = now.duration_since(next_time);
-        let mut frames_to_catch_up = 1;
-        if elapsed > FRAME_DURATION {
-            frames_to_catch_up = (elapsed.as_millis() / FRAME_DURATION.as_millis()) as usize + 1;
-        }
-
-        // How many frames fit in the buffer?
-        let max_frames = buf.len() / frame_bytes;
-        // Always process at least one frame
-        let mut frames = std::cmp::min(frames_to_catch_up.max(1), max_frames.max(1));
-
-        // If we previously had a gap (all missing), only return 1 frame this time
-        if self.prev_zero {
-            frames = 1;
-            self.prev_zero = false;
-        }
-
-        self.next_frame_time = Some(next_time + FRAME_DURATION * (frames as u32));
+        self.next_frame_time = Some(next_time + FRAME_DURATION);
 
         loop {
             if self.shutdown.load(Ordering::SeqCst) {
@@ -148,120 +310,36 @@ impl io::Read for PlayerAudioSource {
                 return Ok(0);
             }
             if self.prev_zero {
-                frames = 1;
                 self.prev_zero = false;
                 self.next_frame_time = Some(std::time::Instant::now() + FRAME_DURATION);
             }
-            let mut temp = Vec::new();
-            let mut _frames_returned = 0;
-            let mut _frames_skipped = 0;
-            for _ in 0..frames {
-                let mut all_samples = Vec::new();
-                let mut user_pcm: HashMap<Uuid, [i16; 960]> = HashMap::new();
-                let mut any_real_audio = false;
-                for entry in self.player_to_discord_buffers.iter() {
-                    let uuid = *entry.key();
-                    let buffer = &entry.value();
-                    let mut playout = buffer.playout_buffer.lock().unwrap();
-                    let mut decoders = self.opus_decoders.lock().unwrap();
-                    let decoder = decoders.entry(uuid).or_insert_with(|| {
-                        OpusDecoder::new(
-                            OPUS_SAMPLE_RATE,
-                            OPUS_CHANNELS,
-                        ).expect("Failed to create Opus decoder")
-                    });
-                    let mut pcm = [0i16; 960];
-                    match playout.fetch_packet() {
-                        PacketLookup::Packet(pkt) => {
-                            // Decode Opus packet (opus2 takes the raw byte slice directly)
-                            match decoder.decode(&pkt.opus, &mut pcm[..], false) {
-                                Ok(_) => {
-                                    user_pcm.insert(uuid, pcm);
-                                    all_samples.push(pcm);
-                                    // Check if PCM is not all zero
-                                    if !pcm.iter().all(|&s| s == 0) {
-                                        any_real_audio = true;
-                                    }
-                                }
-                                Err(e) => {
-                                    tracing::error!(?e, "Opus decode failed for user {:?}", uuid);
-                                    user_pcm.insert(uuid, [0; 960]);
-                                    all_samples.push([0; 960]);
-                                }
-                            }
-                        }
-                        PacketLookup::MissedPacket => {
-                            // PLC: opus2 treats an empty input slice as "packet lost"
-                            match decoder.decode(&[], &mut pcm[..], false) {
-                                Ok(_) => {
-                                    user_pcm.insert(uuid, pcm);
-                                    all_samples.push(pcm);
-                                    // Check if PLC output is not all zero
-                                    if !pcm.iter().all(|&s| s == 0) {
-                                        any_real_audio = true;
-                                    }
-                                }
-                                Err(e) => {
-                                    tracing::error!(?e, "Opus PLC failed for user {:?}", uuid);
-                                    user_pcm.insert(uuid, [0; 960]);
-                                    all_samples.push([0; 960]);
-                                }
-                            }
-                        }
-                        PacketLookup::Filling => {
-                        }
-                    }
-                }
-                if !any_real_audio {
-                    // All users missing/filling, skip this frame
-                    _frames_skipped += 1;
-                    continue;
-                }
-                _frames_returned += 1;
-
-                let combined = crate::audio_util::combine_audio_parts(all_samples);
-
-                for sample in combined.iter() {
-                    let converted = (*sample as f32) / (i16::MAX as f32);
-                    temp.extend_from_slice(&converted.to_le_bytes());
-                }
+            self.drain_mic_ring();
+            if let Some(opus_len) = self.next_opus_frame() {
+                let now = std::time::Instant::now();
+                self.last_frame_sent = Some(now);
+                let written = self.emit_frame(buf, opus_len);
+                tracing::trace!("PlayerAudioSource::read: returning with audio, bytes={}", written);
+                return Ok(written);
             }
-            if temp.is_empty() {
-                // If we just failed to send frames, only return 1 frame next time
-                // If we've been poked, set the silent_countdown to 3
-                if self.should_send_silence.swap(false, Ordering::SeqCst) {
-                    self.silent_countdown = 3;
-                }
-                // If countdown is active, send a silent frame and decrement
-                if self.silent_countdown > 0 {
-                    let silent_frame = [0f32; 960];
-                    for sample in silent_frame.iter() {
-                        temp.extend_from_slice(&sample.to_le_bytes());
-                    }
-                    self.silent_countdown -= 1;
-                    let to_copy = std::cmp::min(buf.len(), temp.len());
-                    buf[..to_copy].copy_from_slice(&temp[..to_copy]);
-                    tracing::trace!("PlayerAudioSource::read: returning silent frame, bytes={}", to_copy);
-                    return Ok(to_copy);
-                }
-                self.prev_zero = true;
-                std::thread::sleep(std::time::Duration::from_millis(2));
-                tracing::trace!("PlayerAudioSource::read: restarting after failed frame, bytes=0");
-                continue;
+            // If we've been poked, set the silent_countdown to 3
+            if self.should_send_silence.swap(false, Ordering::SeqCst) {
+                self.silent_countdown = 3;
             }
-            // Log actual time since last frame sent
-            let now = std::time::Instant::now();
-            self.last_frame_sent = Some(now);
-            self.prev_zero = false;
-            let to_copy: usize = std::cmp::min(buf.len(), temp.len());
-            buf[..to_copy].copy_from_slice(&temp[..to_copy]);
-            if to_copy < temp.len() {
-                self.leftover = temp[to_copy..].to_vec();
-            } else {
-                self.leftover.clear();
+            // If countdown is active, send a silent frame and decrement
+            if self.silent_countdown > 0 {
+                self.silent_countdown -= 1;
+                self.frame[2..2 + SILENT_OPUS_FRAME.len()].copy_from_slice(&SILENT_OPUS_FRAME);
+                let written = self.emit_frame(buf, SILENT_OPUS_FRAME.len());
+                tracing::trace!("PlayerAudioSource::read: returning silent frame, bytes={}", written);
+                return Ok(written);
             }
-            tracing::trace!("PlayerAudioSource::read: returning with audio, bytes={}", to_copy);
-            return Ok(to_copy);
+            self.prev_zero = true;
+            // Nothing audible: sleep until Java queues a packet (or we're
+            // poked or shut down) instead of polling. A buffer still
+            // playing out silence is rechecked on the next frame deadline.
+            let wait = if self.playing { FRAME_DURATION } else { IDLE_WAIT };
+            self.mic_ring.wait_for_packets(wait);
+            tracing::trace!("PlayerAudioSource::read: restarting after failed frame, bytes=0");
         }
     }
 }
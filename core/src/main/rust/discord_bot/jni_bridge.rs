@@ -1,6 +1,6 @@
 use jni::{
-    objects::{JByteArray, JString},
-    sys::{jboolean, jlong, jobject},
+    objects::{JByteArray, JClass, JString},
+    sys::{jboolean, jint, jlong, jlongArray, jobject},
     JNIEnv,
 };
 use serenity::all::ChannelId;
@@ -428,102 +428,385 @@ pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1editDiscord
     }
 }
 
+// JNI: Return the dense buffer slot of a Minecraft player in the low 32 bits
+// and the slot's generation in the high 32 bits, or -1 on failure. Java caches
+// it per player and passes both with every microphone packet.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1playerSlot(
+    _env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+    player_id_msb: jlong,
+    player_id_lsb: jlong,
+) -> jlong {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let player_id = uuid::Uuid::from_u64_pair(player_id_msb as u64, player_id_lsb as u64);
+        let (slot, generation) = discord_bot.player_slot(player_id);
+        let _ = Arc::into_raw(discord_bot);
+        ((generation as u64) << 32 | slot as u32 as u64) as jlong
+    }));
+    match result {
+        Ok(slot) => slot,
+        Err(payload) => {
+            log_jni_panic("DiscordBot__1playerSlot", ptr, &payload);
+            -1
+        }
+    }
+}
+
+// JNI: Free a Minecraft player's buffer slot after they leave the group or
+// disconnect. Java drops its cached slot for the player at the same time.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1releasePlayerSlot(
+    _env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+    player_id_msb: jlong,
+    player_id_lsb: jlong,
+) {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let player_id = uuid::Uuid::from_u64_pair(player_id_msb as u64, player_id_lsb as u64);
+        discord_bot.release_player_slot(player_id);
+        let _ = Arc::into_raw(discord_bot);
+    }));
+    if let Err(payload) = result {
+        log_jni_panic("DiscordBot__1releasePlayerSlot", ptr, &payload);
+    }
+}
+
+// JNI: Store one Minecraft microphone packet. The first `length` bytes of
+// `raw_opus_data` are copied straight into a recycled payload buffer of the
+// player's slot, so steady-state ingestion allocates nothing on either side.
 #[no_mangle]
 pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1addAudioToHearingBuffer<'local>(
     env: JNIEnv<'local>,
     _obj: jobject,
     ptr: jlong,
-    player_id_bytes: JByteArray<'local>,
+    player_slot: jint,
+    slot_generation: jint,
     raw_opus_data: JByteArray<'local>,
+    length: jint,
     sequence_number: jlong,
+    arrival_nanos: jlong,
 ) {
     let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        if player_slot < 0 || length < 0 {
+            return;
+        }
         let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
 
-        let player_id = match env.convert_byte_array(player_id_bytes) {
-            Ok(bytes) => match uuid::Uuid::from_slice(&bytes) {
-                Ok(uuid) => uuid,
+        // This is Minecraft -> Discord, so use player_to_discord_buffers
+        let seq = sequence_number as u16;
+        discord_bot.add_opus_to_playback_buffer(player_slot as usize, slot_generation as u32, length as usize, seq, arrival_nanos, |dst| {
+            // SAFETY: u8 and jbyte (i8) have the same size and alignment.
+            let dst = unsafe { std::slice::from_raw_parts_mut(dst.as_mut_ptr() as *mut jni::sys::jbyte, dst.len()) };
+            match env.get_byte_array_region(&raw_opus_data, 0, dst) {
+                Ok(()) => true,
                 Err(e) => {
-                    tracing::error!("Invalid player_id bytes: {:?}", e);
-                    let _ = Arc::into_raw(discord_bot);
-                    return;
+                    tracing::error!("Unable to copy opus byte array: {:?}", e);
+                    let _ = env.exception_clear();
+                    false
                 }
-            },
-            Err(e) => {
-                tracing::error!("Unable to convert player_id bytes: {:?}", e);
-                let _ = Arc::into_raw(discord_bot);
-                return;
             }
-        };
+        });
+
+        let _ = Arc::into_raw(discord_bot);
+    }));
+    if let Err(payload) = result {
+        log_jni_panic("DiscordBot__1addAudioToHearingBuffer", ptr, &payload);
+    }
+}
 
-        let raw_opus_data = match env.convert_byte_array(raw_opus_data) {
-            Ok(data) => data,
+
+// JNI: Wrap this bot's Minecraft -> Discord microphone ring in a direct
+// ByteBuffer. The memory is owned by the bot; Java must stop writing before _free.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1microphoneRingBuffer(
+    mut env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+) -> jobject {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        if ptr == 0 {
+            tracing::error!("JNI microphoneRingBuffer called with null pointer");
+            return std::ptr::null_mut();
+        }
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let ring = &discord_bot.mic_ring;
+        // SAFETY: the ring lives at least as long as the bot. Java writes to it
+        // only while holding DiscordBot.microphoneWriters shared, and
+        // DiscordBot.free takes that lock exclusively (and drops the buffer)
+        // before _free, so no write outlives the bot.
+        let buffer = unsafe { env.new_direct_byte_buffer(ring.as_ptr(), ring.len()) };
+        let _ = Arc::into_raw(discord_bot);
+        match buffer {
+            Ok(buffer) => JObject::from(buffer).into_raw(),
             Err(e) => {
-                tracing::error!("Unable to convert opus byte array: {:?}", e);
-                let _ = Arc::into_raw(discord_bot);
-                return;
+                tracing::error!(?e, "Unable to create direct ByteBuffer for microphone ring");
+                std::ptr::null_mut()
             }
-        };
-
-        // This is Minecraft -> Discord, so use player_to_discord_buffers
-        let seq = sequence_number as u16;
-        discord_bot.add_opus_to_playback_buffer(player_id, raw_opus_data, seq);
+        }
+    }));
+    match result {
+        Ok(val) => val,
+        Err(payload) => {
+            log_jni_panic("DiscordBot__1microphoneRingBuffer", ptr, &payload);
+            std::ptr::null_mut()
+        }
+    }
+}
 
+// JNI: Wake this bot's mixer, which sleeps on the microphone ring while
+// nobody is talking. Called for the first packet after a quiet period.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1wakeMicrophoneRing(
+    _env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+) {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        discord_bot.mic_ring.wake();
         let _ = Arc::into_raw(discord_bot);
     }));
     if let Err(payload) = result {
-        log_jni_panic("DiscordBot__1addAudioToHearingBuffer", ptr, &payload);
+        log_jni_panic("DiscordBot__1wakeMicrophoneRing", ptr, &payload);
     }
 }
 
-
+// JNI: Wrap this bot's Discord -> Minecraft audio ring in a direct ByteBuffer.
+// The memory is owned by the bot; Java must stop reading before _free.
 #[no_mangle]
-pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1blockForSpeakingBufferOpusData(
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1audioRingBuffer(
     mut env: JNIEnv<'_>,
     _obj: jobject,
     ptr: jlong,
 ) -> jobject {
-    use jni::objects::JObject;
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        if ptr == 0 {
+            tracing::error!("JNI audioRingBuffer called with null pointer");
+            return std::ptr::null_mut();
+        }
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let ring = &discord_bot.discord_to_mc_ring;
+        // SAFETY: the ring lives as long as the bot, which outlives every
+        // Java read (DiscordBot.free stops the consumer before _free).
+        let buffer = unsafe { env.new_direct_byte_buffer(ring.as_ptr(), ring.len()) };
+        let _ = Arc::into_raw(discord_bot);
+        match buffer {
+            Ok(buffer) => JObject::from(buffer).into_raw(),
+            Err(e) => {
+                tracing::error!(?e, "Unable to create direct ByteBuffer for audio ring");
+                std::ptr::null_mut()
+            }
+        }
+    }));
+    match result {
+        Ok(val) => val,
+        Err(payload) => {
+            log_jni_panic("DiscordBot__1audioRingBuffer", ptr, &payload);
+            std::ptr::null_mut()
+        }
+    }
+}
+
+// JNI: Block until any bot publishes Discord audio, the dispatcher is woken
+// explicitly, or timeout_nanos elapse. A timeout <= 0 waits indefinitely, so
+// an idle dispatcher never wakes up; Java only passes one while paced frames
+// are due. Returns the readiness generation to pass to the next call.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordAudioDispatcher__1awaitDiscordAudio(
+    mut _env: JNIEnv<'_>,
+    _class: JClass<'_>,
+    last_generation: jlong,
+    timeout_nanos: jlong,
+) -> jlong {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        let timeout = (timeout_nanos > 0).then(|| std::time::Duration::from_nanos(timeout_nanos as u64));
+        super::audio_ring::AUDIO_READY
+            .wait(last_generation as u64, timeout) as jlong
+    }));
+    match result {
+        Ok(val) => val,
+        Err(payload) => {
+            log_jni_panic("DiscordAudioDispatcher__1awaitDiscordAudio", 0, &payload);
+            last_generation
+        }
+    }
+}
+
+// JNI: Wake the dispatcher out of _awaitDiscordAudio (used on shutdown).
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordAudioDispatcher__1wakeDiscordAudioDispatcher(
+    _env: JNIEnv<'_>,
+    _class: JClass<'_>,
+) {
+    let result = std::panic::catch_unwind(|| {
+        super::audio_ring::AUDIO_READY.notify();
+    });
+    if let Err(payload) = result {
+        log_jni_panic("DiscordAudioDispatcher__1wakeDiscordAudioDispatcher", 0, &payload);
+    }
+}
+
+// JNI: Switch this bot between per-speaker Discord audio and one mixed
+// stream (see discord_mix.rs). Takes effect from the next VoiceTick.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1setMixingEnabled(
+    _env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+    enabled: jboolean,
+) {
+    let result = std::panic::catch_unwind(|| {
+        if ptr == 0 {
+            tracing::error!("JNI setMixingEnabled called with null pointer");
+            return;
+        }
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let enabled = enabled != 0;
+        let previous = discord_bot
+            .mix_discord_audio
+            .swap(enabled, std::sync::atomic::Ordering::Relaxed);
+        if previous != enabled {
+            tracing::info!(enabled, "Discord audio mixing mode changed");
+        }
+        let _ = Arc::into_raw(discord_bot);
+    });
+    if let Err(payload) = result {
+        log_jni_panic("DiscordBot__1setMixingEnabled", ptr, &payload);
+    }
+}
+
+// JNI: Set adaptive songbird playout for calls joined from now on.
+// min_frames: lower bound of the playout depth in 20ms frames; 0 = fixed depth.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_Core_setAdaptivePlayout(
+    _env: JNIEnv<'_>,
+    _class: JClass<'_>,
+    min_frames: jint,
+) {
+    let result = std::panic::catch_unwind(|| {
+        super::set_adaptive_playout(min_frames);
+    });
+    if let Err(payload) = result {
+        log_jni_panic("Core_setAdaptivePlayout", 0, &payload);
+    }
+}
+
+// JNI: Set the per-speaker receive queue policy used by every bot.
+// policy: 0 = drop oldest, 1 = drop newest, 2 = expire by age.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_Core_setReceiveQueuePolicy(
+    _env: JNIEnv<'_>,
+    _class: JClass<'_>,
+    policy: jint,
+    max_frames: jint,
+    max_age_ms: jint,
+) {
+    let result = std::panic::catch_unwind(|| {
+        super::audio_ring::set_receive_queue_policy(policy, max_frames, max_age_ms);
+    });
+    if let Err(payload) = result {
+        log_jni_panic("Core_setReceiveQueuePolicy", 0, &payload);
+    }
+}
 
+// JNI: Receive queue counters for this bot's ring, laid out as
+// [ring drops, then (speaker handle, queue depth, dropped frames, playout
+// depth in frames, packets received, packets lost) per speaker].
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1receiveQueueStats(
+    mut env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+) -> jlongArray {
     let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
         if ptr == 0 {
-            tracing::error!("JNI blockForSpeakingBufferOpusData called with null pointer");
+            tracing::error!("JNI receiveQueueStats called with null pointer");
             return std::ptr::null_mut();
         }
+        let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
+        let ring = &discord_bot.discord_to_mc_ring;
+        let mut values = vec![ring.dropped() as jlong];
+        for stats in ring.speaker_stats() {
+            values.push(stats.handle as jlong);
+            values.push(stats.depth as jlong);
+            values.push(stats.dropped as jlong);
+            values.push(stats.playout_frames as jlong);
+            values.push(stats.received as jlong);
+            values.push(stats.lost as jlong);
+        }
+        let _ = Arc::into_raw(discord_bot);
+
+        let array = match env.new_long_array(values.len() as i32) {
+            Ok(array) => array,
+            Err(e) => {
+                tracing::error!(?e, "Unable to allocate receive queue stats array");
+                return std::ptr::null_mut();
+            }
+        };
+        if let Err(e) = env.set_long_array_region(&array, 0, &values) {
+            tracing::error!(?e, "Unable to fill receive queue stats array");
+            return std::ptr::null_mut();
+        }
+        array.into_raw()
+    }));
+    match result {
+        Ok(val) => val,
+        Err(payload) => {
+            log_jni_panic("DiscordBot__1receiveQueueStats", ptr, &payload);
+            std::ptr::null_mut()
+        }
+    }
+}
 
+// JNI: Minecraft -> Discord jitter buffer counters for this bot, laid out as
+// (player uuid msb, lsb, buffered frames, target depth in frames, late
+// packets, lost frames) per player that has spoken.
+#[no_mangle]
+pub extern "system" fn Java_dev_amsam0_voicechatdiscord_DiscordBot__1sendQueueStats(
+    mut env: JNIEnv<'_>,
+    _obj: jobject,
+    ptr: jlong,
+) -> jlongArray {
+    let result = std::panic::catch_unwind(std::panic::AssertUnwindSafe(|| {
+        if ptr == 0 {
+            tracing::error!("JNI sendQueueStats called with null pointer");
+            return std::ptr::null_mut();
+        }
         let discord_bot = unsafe { Arc::from_raw(ptr as *const DiscordBot) };
-        let opus_packets = discord_bot.block_for_speaking_opus_data();
+        let mut values = Vec::new();
+        for (player_id, stats) in discord_bot.player_to_discord_buffers.stats() {
+            let (msb, lsb) = player_id.as_u64_pair();
+            values.push(msb as jlong);
+            values.push(lsb as jlong);
+            values.push(stats.buffered as jlong);
+            values.push(stats.target as jlong);
+            values.push(stats.late as jlong);
+            values.push(stats.lost as jlong);
+        }
         let _ = Arc::into_raw(discord_bot);
-        match opus_packets {
-            Ok(opus_packets) => {
-                // Create the main array as [[[B]] (3D byte array)
-                let tuple_arr_class = env.find_class("[[B").expect("Couldn't find [[B class");
-                let arr = env.new_object_array(opus_packets.len() as i32, tuple_arr_class, JObject::null()).expect("Couldn't create main [[[B array");
-                for (i, (username, user_id, payload)) in opus_packets.iter().enumerate() {
-                    let username_bytes = username.as_bytes();
-                    let user_id_bytes = user_id.to_le_bytes();
-                    let j_username = env.byte_array_from_slice(username_bytes).expect("Couldn't create byte array from username");
-                    let j_user_id = env.byte_array_from_slice(&user_id_bytes).expect("Couldn't create byte array from user_id");
-                    let j_payload = env.byte_array_from_slice(payload).expect("Couldn't create byte array from payload");
-                    // Create a 2D byte array (byte[][]) for the tuple [usernameBytes, userIdBytes, opusBytes]
-                    let tuple_arr_class = env.find_class("[B").expect("Couldn't find [B class");
-                    let tuple_arr = env.new_object_array(3, tuple_arr_class, JObject::null()).expect("Couldn't create tuple array");
-                    env.set_object_array_element(&tuple_arr, 0, JObject::from(j_username)).expect("Couldn't set username element");
-                    env.set_object_array_element(&tuple_arr, 1, JObject::from(j_user_id)).expect("Couldn't set user_id element");
-                    env.set_object_array_element(&tuple_arr, 2, JObject::from(j_payload)).expect("Couldn't set payload element");
-                    env.set_object_array_element(&arr, i as i32, JObject::from(tuple_arr)).expect("Couldn't set tuple array element");
-                }
-                arr.into_raw()
-            },
-            Err(_) => {
-                std::ptr::null_mut()
+
+        let array = match env.new_long_array(values.len() as i32) {
+            Ok(array) => array,
+            Err(e) => {
+                tracing::error!(?e, "Unable to allocate send queue stats array");
+                return std::ptr::null_mut();
             }
+        };
+        if let Err(e) = env.set_long_array_region(&array, 0, &values) {
+            tracing::error!(?e, "Unable to fill send queue stats array");
+            return std::ptr::null_mut();
         }
+        array.into_raw()
     }));
     match result {
         Ok(val) => val,
         Err(payload) => {
-            log_jni_panic("DiscordBot__1blockForSpeakingBufferOpusData", ptr, &payload);
+            log_jni_panic("DiscordBot__1sendQueueStats", ptr, &payload);
             std::ptr::null_mut()
         }
     }
@@ -552,6 +835,30 @@ pub fn notify_java_discord_user_voice_state(
     ).expect("Failed to call onDiscordUserVoiceState on Java side");
 }
 
+/// Announce a speaker handle -> (user ID, display name) mapping to Java.
+pub fn notify_java_discord_speaker(
+    env: &mut jni::JNIEnv,
+    java_bot_obj: &jni::objects::JObject,
+    handle: i32,
+    discord_user_id: u64,
+    username: &str,
+) {
+    let username_jstring = env.new_string(username).expect("Failed to create Java string for username");
+    if let Err(e) = env.call_method(
+        java_bot_obj,
+        "onDiscordSpeakerRegistered",
+        "(IJLjava/lang/String;)V",
+        &[
+            jni::objects::JValue::Int(handle),
+            jni::objects::JValue::Long(discord_user_id as i64),
+            jni::objects::JValue::Object(&jni::objects::JObject::from(username_jstring)),
+        ],
+    ) {
+        let _ = env.exception_clear();
+        tracing::warn!(?e, "Failed to call onDiscordSpeakerRegistered on Java side");
+    }
+}
+
 /// Notify Java when a Discord text message is sent in a managed VC channel.
 pub fn notify_java_discord_text_message(
     env: &mut jni::JNIEnv,
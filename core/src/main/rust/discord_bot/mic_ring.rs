@@ -0,0 +1,166 @@
+//! Minecraft -> Discord microphone ring shared with Java as a direct `ByteBuffer`.
+//!
+//! Simple Voice Chat threads enqueue microphone packets here without crossing
+//! JNI, and the mixer (`PlayerAudioSource::read`) drains everything queued
+//! into the player buffers once per frame it produces. The memory is owned by
+//! the bot; Java wraps it once (see `_microphoneRingBuffer`) and must stop
+//! writing before `_free`.
+//!
+//! Layout (native byte order):
+//! - `[0..8)`   next position claimed by a producer (Java, compare-and-set)
+//! - `[8..16)`  packets dropped because the ring was full
+//! - `[16..24)` 1 while the mixer is asleep waiting for packets
+//! - `[64..)`   `MIC_RING_SLOTS` slots of `MIC_SLOT_SIZE` bytes
+//!
+//! Slot: `[u64 sequence][i32 player slot][u16 rtp seq][u16 opus_len][i64 arrival nanos][u32 slot generation][4 unused][opus bytes]`
+//!
+//! The arrival time is Java's `System.nanoTime()` when the packet was received,
+//! so the jitter buffers see network timing rather than when the mixer drained it.
+//! The slot generation lets a packet queued before its player left be dropped
+//! instead of reaching whoever was given the slot next.
+//!
+//! Slots follow a bounded multi-producer queue: slot `pos & (MIC_RING_SLOTS - 1)`
+//! is free for position `pos` while its sequence is `pos`. A producer claims
+//! the position, writes the slot and publishes it by storing `pos + 1`
+//! (release). The single consumer reads it and frees the slot for the next lap
+//! by storing `pos + MIC_RING_SLOTS`. Packets longer than `MIC_MAX_OPUS` bytes
+//! don't fit a slot; Java hands those to `_addAudioToHearingBuffer` instead.
+//!
+//! While nobody is talking the mixer sleeps in `wait_for_packets` instead of
+//! polling. It raises the sleeping word before its last check of the ring;
+//! a producer that publishes a packet and then sees the word raised clears it
+//! and rings the doorbell (`_wakeMicrophoneRing`), so only the first packet
+//! after a quiet period costs a JNI call.
+
+use std::sync::atomic::{fence, AtomicU64, Ordering};
+use std::time::Duration;
+
+use parking_lot::{Condvar, Mutex};
+
+pub const MIC_RING_HEADER_SIZE: usize = 64;
+pub const MIC_RING_SLOTS: usize = 256;
+pub const MIC_SLOT_SIZE: usize = 512;
+pub const MIC_SLOT_HEADER_SIZE: usize = 32;
+pub const MIC_MAX_OPUS: usize = MIC_SLOT_SIZE - MIC_SLOT_HEADER_SIZE;
+
+const DROPPED_WORD: usize = 1;
+const SLEEPING_WORD: usize = 2;
+
+const _: () = assert!(MIC_RING_SLOTS.is_power_of_two());
+const _: () = assert!(MIC_SLOT_SIZE % 8 == 0 && MIC_RING_HEADER_SIZE % 8 == 0);
+
+pub struct MicRing {
+    /// Header followed by the slots. Stored as words so every slot sequence
+    /// is 8-byte aligned for the atomics Java accesses through a VarHandle.
+    mem: Box<[AtomicU64]>,
+    /// Position of the next slot to read; the lock keeps draining single-consumer.
+    read_pos: Mutex<u64>,
+    /// Doorbell for the sleeping mixer: set by `wake`, cleared by the waiter
+    doorbell: Mutex<bool>,
+    doorbell_cond: Condvar,
+}
+
+impl MicRing {
+    pub fn new() -> MicRing {
+        let words = (MIC_RING_HEADER_SIZE + MIC_RING_SLOTS * MIC_SLOT_SIZE) / 8;
+        let mem: Box<[AtomicU64]> = (0..words).map(|_| AtomicU64::new(0)).collect();
+        for slot in 0..MIC_RING_SLOTS {
+            mem[Self::slot_word(slot)].store(slot as u64, Ordering::Relaxed);
+        }
+        MicRing {
+            mem,
+            read_pos: Mutex::new(0),
+            doorbell: Mutex::new(false),
+            doorbell_cond: Condvar::new(),
+        }
+    }
+
+    /// Base pointer of the shared memory, handed to Java.
+    pub fn as_ptr(&self) -> *mut u8 {
+        self.mem.as_ptr() as *mut u8
+    }
+
+    pub fn len(&self) -> usize {
+        MIC_RING_HEADER_SIZE + MIC_RING_SLOTS * MIC_SLOT_SIZE
+    }
+
+    pub fn dropped(&self) -> u64 {
+        self.mem[DROPPED_WORD].load(Ordering::Relaxed)
+    }
+
+    #[inline]
+    fn slot_word(slot: usize) -> usize {
+        (MIC_RING_HEADER_SIZE + slot * MIC_SLOT_SIZE) / 8
+    }
+
+    /// Calls `f(player slot, slot generation, rtp seq, arrival nanos, opus)` for every published packet, in
+    /// claim order, and frees their slots. An empty `opus` is an end-of-speech
+    /// marker. Stops at the first slot still being written.
+    pub fn drain(&self, mut f: impl FnMut(usize, u32, u16, i64, &[u8])) {
+        let mut read_pos = self.read_pos.lock();
+        loop {
+            let slot = (*read_pos as usize) & (MIC_RING_SLOTS - 1);
+            let word = Self::slot_word(slot);
+            if self.mem[word].load(Ordering::Acquire) != *read_pos + 1 {
+                return;
+            }
+            // SAFETY: the slot lies inside `mem`, and its producer finished
+            // writing it before publishing the sequence we acquired above.
+            let (player_slot, generation, seq, arrival_ns, opus) = unsafe {
+                let base = self.as_ptr().add(MIC_RING_HEADER_SIZE + slot * MIC_SLOT_SIZE) as *const u8;
+                let player_slot = std::ptr::read_unaligned(base.add(8) as *const i32);
+                let seq = std::ptr::read_unaligned(base.add(12) as *const u16);
+                let opus_len = (std::ptr::read_unaligned(base.add(14) as *const u16) as usize).min(MIC_MAX_OPUS);
+                let arrival_ns = std::ptr::read_unaligned(base.add(16) as *const i64);
+                let generation = std::ptr::read_unaligned(base.add(24) as *const u32);
+                (player_slot, generation, seq, arrival_ns, std::slice::from_raw_parts(base.add(MIC_SLOT_HEADER_SIZE), opus_len))
+            };
+            if player_slot >= 0 {
+                f(player_slot as usize, generation, seq, arrival_ns, opus);
+            }
+            self.mem[word].store(*read_pos + MIC_RING_SLOTS as u64, Ordering::Release);
+            *read_pos += 1;
+        }
+    }
+
+    /// Whether the next slot to read has been published.
+    fn has_packets(&self) -> bool {
+        let read_pos = *self.read_pos.lock();
+        let slot = (read_pos as usize) & (MIC_RING_SLOTS - 1);
+        self.mem[Self::slot_word(slot)].load(Ordering::Acquire) == read_pos + 1
+    }
+
+    /// Blocks until a packet is published, `wake` is called or `timeout`
+    /// passes. Returns at once if packets are already waiting.
+    pub fn wait_for_packets(&self, timeout: Duration) {
+        let mut rung = self.doorbell.lock();
+        self.mem[SLEEPING_WORD].store(1, Ordering::SeqCst);
+        // Pairs with the fence producers place between publishing a slot and
+        // reading the sleeping word: either we see their packet or they see us asleep.
+        fence(Ordering::SeqCst);
+        if !*rung && !self.has_packets() {
+            self.doorbell_cond.wait_for(&mut rung, timeout);
+        }
+        *rung = false;
+        self.mem[SLEEPING_WORD].store(0, Ordering::Relaxed);
+    }
+
+    /// Wakes the mixer if it is waiting for packets.
+    pub fn wake(&self) {
+        *self.doorbell.lock() = true;
+        self.doorbell_cond.notify_all();
+    }
+
+    /// Wakes the mixer only if it is asleep, for packets stored without the ring.
+    pub fn wake_if_sleeping(&self) {
+        if self.mem[SLEEPING_WORD].swap(0, Ordering::SeqCst) == 1 {
+            self.wake();
+        }
+    }
+
+    /// Frees every published slot without delivering it, e.g. after a restart
+    /// when anything queued is stale.
+    pub fn discard(&self) {
+        self.drain(|_, _, _, _, _| {});
+    }
+}
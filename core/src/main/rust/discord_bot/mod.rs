@@ -18,12 +18,16 @@ use songbird::{
 use tokio::task::AbortHandle;
 use tracing::{info, warn};
 
-use crate::audio_util::MAX_AUDIO_BUFFER;
-
+mod audio_ring;
+mod discord_mix;
 mod discord_receive;
 mod discord_speak;
 mod jni_bridge;
 mod log_in;
+mod mic_ring;
+mod player_slots;
+mod speakers;
+mod ssrc_table;
 mod start;
 pub mod watchdog;
 
@@ -32,22 +36,13 @@ pub mod watchdog;
 pub(crate) static BOT_REGISTRY: once_cell::sync::Lazy<DashMap<usize, std::sync::Weak<DiscordBot>>> =
     once_cell::sync::Lazy::new(DashMap::new);
 
-struct DiscordToMinecraftBuffer {
-    received_audio_tx: flume::Sender<Vec<(String, u64, Vec<u8>)>>,
-    received_audio_rx: flume::Receiver<Vec<(String, u64, Vec<u8>)>>,
-}
-
 
 // --- Jitter buffer integration ---
 mod playout_buffer;
-use playout_buffer::{PlayoutBuffer, StoredPacket};
 use std::sync::Mutex as StdMutex;
+pub use player_slots::{PlayerSlots, PlayerToDiscordBuffer};
 
-pub struct PlayerToDiscordBuffer {
-    pub playout_buffer: StdMutex<PlayoutBuffer>,
-}
-
-use std::sync::atomic::{AtomicBool, Ordering};
+use std::sync::atomic::{AtomicBool, AtomicU8, Ordering};
 
 use jni::JavaVM;
 use jni::objects::GlobalRef;
@@ -59,10 +54,17 @@ pub struct DiscordBot {
     songbird: Arc<Songbird>,
     state: RwLock<State>,
     client_task: Mutex<Option<AbortHandle>>,
-    /// Buffer for Discord -> Minecraft audio (Opus data, single group)
-    discord_to_mc_buffer: DiscordToMinecraftBuffer,
-    /// Buffers for Minecraft -> Discord audio (PCM data per player)
-    player_to_discord_buffers: Arc<DashMap<Uuid, PlayerToDiscordBuffer>>,
+    /// Shared ring for Discord -> Minecraft audio (Opus data, single group),
+    /// read in place by Java
+    discord_to_mc_ring: audio_ring::AudioRing,
+    /// Handles referenced by Discord -> Minecraft audio records
+    speakers: speakers::SpeakerRegistry,
+    /// Whether Discord speakers are mixed into one stream (see `discord_mix.rs`)
+    mix_discord_audio: AtomicBool,
+    /// Buffers for Minecraft -> Discord audio (Opus data per player slot)
+    player_to_discord_buffers: Arc<PlayerSlots>,
+    /// Microphone packets queued by Java, drained into the buffers above by the mixer
+    mic_ring: Arc<mic_ring::MicRing>,
     audio_shutdown: Arc<AtomicBool>,
     /// JNI: JavaVM for cross-thread callback
     pub java_vm: Arc<JavaVM>,
@@ -94,9 +96,27 @@ enum State {
     },
 }
 
+/// Songbird's receive playout depth in 20ms frames: always with fixed
+/// playout, and the upper bound with adaptive playout.
+const PLAYOUT_BUFFER_LENGTH: u8 = 7;
+
+/// Lower bound of adaptive playout in frames; 0 keeps the fixed depth.
+static ADAPTIVE_PLAYOUT_MIN: AtomicU8 = AtomicU8::new(0);
+
+/// Sets adaptive playout for calls joined from now on. `min_frames` of 0
+/// keeps songbird's fixed `PLAYOUT_BUFFER_LENGTH` depth.
+pub fn set_adaptive_playout(min_frames: i32) {
+    // A minimum of the full fixed depth would leave the adaptive delay nothing to adapt
+    let min_frames = min_frames.clamp(0, PLAYOUT_BUFFER_LENGTH as i32 - 1) as u8;
+    ADAPTIVE_PLAYOUT_MIN.store(min_frames, Ordering::Relaxed);
+}
+
+fn adaptive_playout_min() -> Option<std::num::NonZeroU8> {
+    std::num::NonZeroU8::new(ADAPTIVE_PLAYOUT_MIN.load(Ordering::Relaxed))
+}
+
 impl DiscordBot {
     pub fn new(token: String, category_id: ChannelId, java_vm: Arc<JavaVM>, java_bot_obj: GlobalRef) -> DiscordBot {
-        let (received_audio_tx, received_audio_rx) = flume::bounded(MAX_AUDIO_BUFFER);
         DiscordBot {
             token,
             category_id,
@@ -105,17 +125,17 @@ impl DiscordBot {
                 use std::num::NonZeroU8;
                 let songbird_config = Config::default()
                     .decode_mode(DecodeMode::Decrypt)
-                    .playout_buffer_length(NonZeroU8::new(7).unwrap())
+                    .playout_buffer_length(NonZeroU8::new(PLAYOUT_BUFFER_LENGTH).unwrap())
                     .playout_spike_length(3);
                 Songbird::serenity_from_config(songbird_config)
             },
             state: RwLock::new(State::NotLoggedIn),
             client_task: Mutex::new(None),
-            discord_to_mc_buffer: DiscordToMinecraftBuffer {
-                received_audio_tx,
-                received_audio_rx,
-            },
-            player_to_discord_buffers: Arc::new(DashMap::new()),
+            discord_to_mc_ring: audio_ring::AudioRing::new(),
+            speakers: speakers::SpeakerRegistry::new(),
+            mix_discord_audio: AtomicBool::new(false),
+            player_to_discord_buffers: Arc::new(PlayerSlots::new()),
+            mic_ring: Arc::new(mic_ring::MicRing::new()),
             audio_shutdown: Arc::new(AtomicBool::new(false)),
             java_vm,
             java_bot_obj,
@@ -161,6 +181,29 @@ impl DiscordBot {
         self.user_id_to_username.insert(user_id, username.to_string());
     }
 
+    /// Returns the speaker handle for `user_id`, announcing the handle and the
+    /// user's current display name to Java. Completes only after Java has
+    /// recorded the mapping, so audio tagged with the handle can be resolved.
+    pub async fn register_speaker(&self, user_id: u64, username: String) -> i32 {
+        let handle = self.speakers.handle_for(user_id);
+        let vm = Arc::clone(&self.java_vm);
+        let obj = self.java_bot_obj.clone();
+        let _ = tokio::task::spawn_blocking(move || match vm.attach_current_thread() {
+            Ok(mut env) => {
+                crate::discord_bot::jni_bridge::notify_java_discord_speaker(
+                    &mut env,
+                    obj.as_obj(),
+                    handle,
+                    user_id,
+                    &username,
+                );
+            }
+            Err(e) => warn!(?e, "Failed to attach JVM thread for speaker registration"),
+        })
+        .await;
+        handle
+    }
+
     /// Asynchronously create a Discord voice channel in the configured category.
     pub async fn create_voice_channel(&self, http: &Arc<Http>, group_name: &str) -> Result<ChannelId, Report> {
         use serenity::all::ChannelType;
@@ -437,58 +480,33 @@ impl DiscordBot {
         Ok(())
     }
 
-    pub fn block_for_speaking_opus_data(&self) -> Result<Vec<(String, u64, Vec<u8>)>, Report> {
-        match self.discord_to_mc_buffer.received_audio_rx.recv_timeout(Duration::from_millis(50)) {
-            Ok(mut data) => {
-                // Catch up on a small backlog per call so a briefly slow consumer
-                // recovers instead of lagging behind (and dropping ticks) forever.
-                // Capped so we never burst more than ~100ms of audio at once.
-                for _ in 0..4 {
-                    match self.discord_to_mc_buffer.received_audio_rx.try_recv() {
-                        Ok(more) => data.extend(more),
-                        Err(_) => break,
-                    }
-                }
-                Ok(data)
-            }
-            Err(flume::RecvTimeoutError::Timeout) => {
-                Err(eyre::eyre!("no one is speaking (timeout waiting for audio)"))
-            }
-            Err(flume::RecvTimeoutError::Disconnected) => {
-                Err(eyre::eyre!("audio channel closed (bot disconnected or no senders)"))
-            }
-        }
+    /// Returns the dense slot of a player's Minecraft -> Discord buffer and
+    /// its generation, which Java passes with every microphone packet of
+    /// that player.
+    pub fn player_slot(&self, player_id: Uuid) -> (usize, u32) {
+        self.player_to_discord_buffers.slot_for(player_id)
+    }
+
+    /// Frees a player's Minecraft -> Discord buffer slot once they leave the
+    /// group or disconnect, so it can be reused by the next player.
+    pub fn release_player_slot(&self, player_id: Uuid) {
+        self.player_to_discord_buffers.release(player_id);
     }
 
-    /// Store Opus payload in the player buffer, using the provided sequence number
-    pub fn add_opus_to_playback_buffer(&self, player_id: Uuid, payload: Vec<u8>, seq: u16) {
+    /// Store an Opus payload of `len` bytes in the player's buffer, using the
+    /// provided sequence number and Java arrival time. Packets for an older
+    /// `generation` of the slot are dropped. `fill` copies the payload into a buffer
+    /// recycled from earlier packets and returns false if that failed.
+    pub fn add_opus_to_playback_buffer(&self, slot: usize, generation: u32, len: usize, seq: u16, arrival_ns: i64, fill: impl FnOnce(&mut [u8]) -> bool) {
         if self.audio_shutdown.load(Ordering::SeqCst) {
             return;
         }
-        // Special handling for zero-length packets: treat as end-of-speech marker
-        if payload.is_empty() {
-            let buffer = self.player_to_discord_buffers.entry(player_id)
-                .or_insert_with(|| {
-                    tracing::debug!("Creating new PlayerToDiscordBuffer for player_id={}", player_id);
-                    PlayerToDiscordBuffer {
-                        playout_buffer: StdMutex::new(PlayoutBuffer::new(8, seq)),
-                    }
-                });
-            let mut playout = buffer.playout_buffer.lock().unwrap();
-            playout.force_drain();
-            tracing::debug!("Received zero-length packet for player_id={}: forcing playout buffer to drain mode", player_id);
+        let found = self.player_to_discord_buffers.store(slot, generation, len, seq, arrival_ns, fill);
+        if !found {
+            tracing::debug!("Dropping Opus packet for unknown or reassigned player slot {} (generation {})", slot, generation);
             return;
         }
-        let buffer = self.player_to_discord_buffers.entry(player_id)
-            .or_insert_with(|| {
-                tracing::debug!("Creating new PlayerToDiscordBuffer for player_id={}", player_id);
-                PlayerToDiscordBuffer {
-                    playout_buffer: StdMutex::new(PlayoutBuffer::new(8, seq)),
-                }
-            });
-        let mut playout = buffer.playout_buffer.lock().unwrap();
-        let stored = StoredPacket { opus: payload, decrypted: true, seq };
-        playout.store_packet(stored);
+        self.mic_ring.wake_if_sleeping();
     }
 
     /// Notifies the Java side about every user already sitting in the managed
@@ -601,8 +619,13 @@ impl DiscordBot {
     /// Hard-reset in-memory audio state so restart can recover from stale/desynced buffers.
     pub fn hard_reset_audio_state(&self) {
         self.audio_shutdown.store(true, Ordering::SeqCst);
-        self.player_to_discord_buffers.clear();
-        self.discord_to_mc_buffer.received_audio_rx.drain();
+        self.mic_ring.discard();
+        self.mic_ring.wake();
+        self.player_to_discord_buffers.reset();
+        // Java re-attaches at the current write position when this bot is
+        // registered with the dispatcher again, so anything left in the ring
+        // is skipped; just wake the dispatcher.
+        self.discord_to_mc_ring.wake();
         if let Some(uuid) = self.get_audio_source_uuid() {
             crate::discord_bot::discord_speak::remove_audio_source(&uuid);
             *self.audio_source_uuid.lock().unwrap() = None;
@@ -0,0 +1,164 @@
+//! Dense slots for Minecraft -> Discord audio buffers.
+//!
+//! Each player that speaks gets a slot index the first time Java asks for it.
+//! Java caches the index per player, so every microphone packet after that
+//! reaches its playout buffer with an array index instead of a UUID lookup.
+//! When a player leaves the group or disconnects, their slot is emptied and
+//! put on a free list, and the next new player reuses it. The table therefore
+//! stays as large as the most players speaking at once, not every player
+//! ever seen. Slots are never reordered; a hard reset empties their buffers
+//! but keeps the assignments.
+
+use std::collections::HashMap;
+use std::sync::Mutex as StdMutex;
+
+use parking_lot::{Mutex, RwLock, RwLockReadGuard};
+use uuid::Uuid;
+
+use super::playout_buffer::{PlayoutBuffer, PlayoutStats, StoredPacket};
+
+pub struct PlayerToDiscordBuffer {
+    /// Nil while the slot is free
+    pub player_id: Uuid,
+    /// Bumped each time the slot is given to another player. Packets carry
+    /// the generation their slot was assigned with, so ones queued for a
+    /// previous occupant are rejected, and per-slot state kept elsewhere
+    /// (the mixer's decoders) can tell the slot was reused.
+    pub generation: u32,
+    pub playout_buffer: StdMutex<PlayoutBuffer>,
+}
+
+impl PlayerToDiscordBuffer {
+    pub fn is_free(&self) -> bool {
+        self.player_id.is_nil()
+    }
+}
+
+/// Slot assignments, only used when assigning or freeing a slot
+struct SlotIndex {
+    by_player: HashMap<Uuid, usize>,
+    free: Vec<usize>,
+}
+
+pub struct PlayerSlots {
+    index: Mutex<SlotIndex>,
+    slots: RwLock<Vec<PlayerToDiscordBuffer>>,
+}
+
+impl PlayerSlots {
+    pub fn new() -> PlayerSlots {
+        PlayerSlots {
+            index: Mutex::new(SlotIndex {
+                by_player: HashMap::new(),
+                free: Vec::new(),
+            }),
+            slots: RwLock::new(Vec::new()),
+        }
+    }
+
+    /// Returns the slot for a player and its current generation, reusing a
+    /// freed slot or creating an empty buffer if needed.
+    pub fn slot_for(&self, player_id: Uuid) -> (usize, u32) {
+        let mut index = self.index.lock();
+        if let Some(&slot) = index.by_player.get(&player_id) {
+            return (slot, self.slots.read()[slot].generation);
+        }
+        let mut slots = self.slots.write();
+        let slot = match index.free.pop() {
+            Some(slot) => {
+                tracing::debug!("Reusing PlayerToDiscordBuffer slot {} for player_id={}", slot, player_id);
+                let buffer = &mut slots[slot];
+                buffer.player_id = player_id;
+                buffer.generation = buffer.generation.wrapping_add(1);
+                slot
+            }
+            None => {
+                let slot = slots.len();
+                tracing::debug!("Creating new PlayerToDiscordBuffer for player_id={} (slot {})", player_id, slot);
+                slots.push(PlayerToDiscordBuffer {
+                    player_id,
+                    generation: 0,
+                    playout_buffer: StdMutex::new(PlayoutBuffer::new()),
+                });
+                slot
+            }
+        };
+        let generation = slots[slot].generation;
+        index.by_player.insert(player_id, slot);
+        (slot, generation)
+    }
+
+    /// Empties a player's slot and frees it for the next new player. Returns
+    /// false if the player had no slot.
+    pub fn release(&self, player_id: Uuid) -> bool {
+        let mut index = self.index.lock();
+        let Some(slot) = index.by_player.remove(&player_id) else {
+            return false;
+        };
+        let mut slots = self.slots.write();
+        let buffer = &mut slots[slot];
+        buffer.player_id = Uuid::nil();
+        *buffer.playout_buffer.get_mut().unwrap() = PlayoutBuffer::new();
+        index.free.push(slot);
+        tracing::debug!("Freed PlayerToDiscordBuffer slot {} of player_id={}", slot, player_id);
+        true
+    }
+
+    /// Runs `f` on the buffer in `slot`; returns None for a slot that was never assigned.
+    pub fn with<R>(&self, slot: usize, f: impl FnOnce(&PlayerToDiscordBuffer) -> R) -> Option<R> {
+        self.slots.read().get(slot).map(f)
+    }
+
+    /// Stores an Opus payload of `len` bytes in the buffer in `slot`. `fill`
+    /// copies the payload into a buffer recycled from earlier packets and
+    /// returns false if that failed. A zero-length payload marks the end of
+    /// the player's speech. `arrival_ns` is when Java received the packet.
+    /// Returns false for a slot that was never assigned, and for a
+    /// `generation` other than the slot's current one.
+    pub fn store(&self, slot: usize, generation: u32, len: usize, seq: u16, arrival_ns: i64, fill: impl FnOnce(&mut [u8]) -> bool) -> bool {
+        self.with(slot, |buffer| {
+            // Queued before the slot was freed (and maybe given to someone else)
+            if buffer.is_free() || buffer.generation != generation {
+                return false;
+            }
+            let mut playout = buffer.playout_buffer.lock().unwrap();
+            // Special handling for zero-length packets: treat as end-of-speech marker
+            if len == 0 {
+                playout.force_drain();
+                tracing::debug!("Received zero-length packet for player_id={}: forcing playout buffer to drain mode", buffer.player_id);
+                return true;
+            }
+            let mut opus = playout.take_spare();
+            opus.resize(len, 0);
+            if !fill(&mut opus) {
+                playout.recycle(opus);
+                return true;
+            }
+            playout.store_packet(StoredPacket { opus, decrypted: true, seq }, arrival_ns);
+            true
+        })
+        .unwrap_or(false)
+    }
+
+    /// All buffers, in slot order.
+    pub fn read(&self) -> RwLockReadGuard<'_, Vec<PlayerToDiscordBuffer>> {
+        self.slots.read()
+    }
+
+    /// Playout stats of every player that has sent a packet, in slot order.
+    pub fn stats(&self) -> Vec<(Uuid, PlayoutStats)> {
+        self.slots
+            .read()
+            .iter()
+            .map(|buffer| (buffer.player_id, buffer.playout_buffer.lock().unwrap().stats()))
+            .filter(|(_, stats)| stats.received > 0)
+            .collect()
+    }
+
+    /// Empties every buffer, keeping slot assignments and free slots.
+    pub fn reset(&self) {
+        for buffer in self.slots.read().iter() {
+            *buffer.playout_buffer.lock().unwrap() = PlayoutBuffer::new();
+        }
+    }
+}
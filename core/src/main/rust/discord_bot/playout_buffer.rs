@@ -10,8 +10,41 @@
 //THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 
 
+
+//! Adaptive jitter buffer for one Minecraft player's Opus packets.
+//!
+//! Packets are ordered by sequence number as in Songbird's buffer, but the
+//! playout depth is not fixed. Every packet's arrival time (stamped by Java)
+//! is compared with its send time (sequence number x 20ms). The transit
+//! time above the fastest packet of the current burst is that packet's
+//! delay. The target depth covers `DELAY_PERCENTILE` of the last
+//! `DELAY_WINDOW` delays, plus one frame for the mixer's own cadence.
+//!
+//! A burst starts playing once the target depth is buffered. While playing,
+//! the buffer moves towards a changed target one frame at a time, without a
+//! reset. If it is too deep it skips a frame. If it is too shallow it plays
+//! a concealment frame without consuming a packet.
+
 use std::collections::VecDeque;
 
+/// One Opus frame, in microseconds
+const FRAME_US: i64 = 20_000;
+/// Depth bounds in 20ms frames
+const MIN_DEPTH: usize = 2;
+const MAX_DEPTH: usize = 16;
+/// Recent packets the delay percentile is taken over (2s of speech)
+const DELAY_WINDOW: usize = 100;
+/// Percentile of recent packet delays the target depth covers
+const DELAY_PERCENTILE: usize = 95;
+/// Packets further than this from the playout position are a discontinuity
+const MAX_LOOKAHEAD: usize = 2 * MAX_DEPTH;
+/// Consecutive out-of-range packets after which the buffer resyncs to them
+const RESYNC_AFTER_FAILS: usize = 8;
+/// Frames between two one-frame depth adjustments while playing
+const RESIZE_INTERVAL: u32 = 25;
+/// A gap this long between packets starts a new burst
+const BURST_GAP_US: i64 = 200_000;
+
 #[derive(Clone, Debug, Eq, PartialEq)]
 pub struct StoredPacket {
     pub opus: Vec<u8>,
@@ -32,85 +65,220 @@ pub enum PacketLookup {
     Filling,
 }
 
+/// Playout counters of one buffer, for stats.
+#[derive(Clone, Copy, Debug)]
+pub struct PlayoutStats {
+    /// Frames currently buffered, including gaps for missing packets
+    pub buffered: usize,
+    /// Depth in frames the buffer is currently aiming for
+    pub target: usize,
+    pub received: u64,
+    /// Packets that arrived after their frame was played
+    pub late: u64,
+    /// Frames played without a packet
+    pub lost: u64,
+}
+
 #[derive(Debug)]
 pub struct PlayoutBuffer {
     buffer: VecDeque<Option<StoredPacket>>,
     playout_mode: PlayoutMode,
     next_seq: u16,
-    // For simplicity, timestamp logic is omitted for now.
     consecutive_store_fails: usize,
-    capacity: usize,
+    /// Whether a packet has been stored since the last resync; the next one sets `next_seq`
+    synced: bool,
+    /// Set by an end-of-speech marker: play out what is left without stretching
+    ending: bool,
+    /// Payload buffers of played or dropped packets, reused for new packets
+    spare: Vec<Vec<u8>>,
+    /// Unwrapped sequence number and arrival time (us) of the newest packet
+    highest_seq: i64,
+    last_arrival_us: i64,
+    /// Lowest transit time (arrival minus send time) of the current burst, in us
+    burst_min_transit: Option<i64>,
+    /// Ring of recent packet delays over `burst_min_transit`, in us
+    delays: [i64; DELAY_WINDOW],
+    delay_count: usize,
+    delay_next: usize,
+    target_len: usize,
+    frames_since_resize: u32,
+    received: u64,
+    late: u64,
+    lost: u64,
 }
 
 impl PlayoutBuffer {
-
-    pub fn new(capacity: usize, next_seq: u16) -> Self {
+    /// Creates an empty buffer that starts at the sequence number of the first packet stored.
+    pub fn new() -> Self {
         Self {
-            buffer: VecDeque::with_capacity(capacity),
+            buffer: VecDeque::with_capacity(MAX_LOOKAHEAD + 1),
             playout_mode: PlayoutMode::Fill,
-            next_seq,
+            next_seq: 0,
             consecutive_store_fails: 0,
-            capacity,
+            synced: false,
+            ending: false,
+            spare: Vec::with_capacity(MAX_DEPTH * 2),
+            highest_seq: 0,
+            last_arrival_us: 0,
+            burst_min_transit: None,
+            delays: [0; DELAY_WINDOW],
+            delay_count: 0,
+            delay_next: 0,
+            target_len: MIN_DEPTH,
+            frames_since_resize: 0,
+            received: 0,
+            late: 0,
+            lost: 0,
+        }
+    }
+
+    /// Takes an empty payload buffer to copy a new packet into.
+    pub fn take_spare(&mut self) -> Vec<u8> {
+        self.spare.pop().unwrap_or_default()
+    }
+
+    /// Returns a payload buffer that is no longer needed.
+    pub fn recycle(&mut self, mut opus: Vec<u8>) {
+        if self.spare.len() < MAX_DEPTH * 2 {
+            opus.clear();
+            self.spare.push(opus);
+        }
+    }
+
+    pub fn stats(&self) -> PlayoutStats {
+        PlayoutStats {
+            buffered: self.buffer.len(),
+            target: self.target_len,
+            received: self.received,
+            late: self.late,
+            lost: self.lost,
         }
     }
 
     /// Resets the buffer to start from a new sequence number and stores the first packet.
     fn reset_buffer(&mut self, pkt_seq: u16, packet: StoredPacket) {
-        self.buffer.clear();
+        while let Some(slot) = self.buffer.pop_front() {
+            if let Some(old) = slot {
+                self.recycle(old.opus);
+            }
+        }
         self.next_seq = pkt_seq;
         self.playout_mode = PlayoutMode::Fill;
+        self.ending = false;
         self.buffer.push_back(Some(packet));
         self.consecutive_store_fails = 0;
+        self.frames_since_resize = 0;
     }
 
     /// Force the buffer into Drain mode (emit all remaining packets, then switch to Fill)
     pub fn force_drain(&mut self) {
         self.playout_mode = PlayoutMode::Drain;
+        self.ending = true;
+        // The next packet starts a new burst
+        self.burst_min_transit = None;
     }
 
-    pub fn store_packet(&mut self, packet: StoredPacket) {
+    /// Stores a packet that Java received at `arrival_ns` (monotonic, any origin).
+    pub fn store_packet(&mut self, packet: StoredPacket, arrival_ns: i64) {
         let pkt_seq = packet.seq;
-        let seq_diff = pkt_seq.wrapping_sub(self.next_seq) as i32;
+        self.received += 1;
+        let seq_diff = pkt_seq.wrapping_sub(self.next_seq) as i16 as i32;
+
+        if self.synced && (seq_diff < -(MAX_LOOKAHEAD as i32) || seq_diff > MAX_LOOKAHEAD as i32) {
+            // Far from the playout position: a stray packet, or the client
+            // restarted its sequence. Resync once it keeps happening.
+            self.consecutive_store_fails += 1;
+            if self.consecutive_store_fails < RESYNC_AFTER_FAILS {
+                self.recycle(packet.opus);
+                return;
+            }
+            self.synced = false;
+        }
 
-        // If the sequence number is much less than expected (e.g., after client restart), reset buffer
-        if seq_diff < -100 {
+        self.note_arrival(pkt_seq, arrival_ns / 1000);
+        if !self.synced {
+            self.synced = true;
             self.reset_buffer(pkt_seq, packet);
             return;
         }
 
-        // Out-of-order detection: drop packets older than next_seq
         if seq_diff < 0 {
-            // Too old, drop
+            // Its frame was already played
+            self.late += 1;
+            self.recycle(packet.opus);
             return;
         }
 
         let desired_index = seq_diff as usize;
-        // Error threshold for too-far-ahead packets
-        let err_threshold = 8;
-        if desired_index > 16 {
-            // Too far ahead, increment store fails
-            self.consecutive_store_fails += 1;
-            // If too many consecutive store fails, treat as desync and reset buffer
-            if self.consecutive_store_fails >= err_threshold {
-                self.reset_buffer(pkt_seq, packet);
-            }
-            return;
-        }
-        
         while self.buffer.len() <= desired_index {
             self.buffer.push_back(None);
         }
-        self.buffer[desired_index] = Some(packet);
+        if let Some(old) = self.buffer[desired_index].replace(packet) {
+            self.recycle(old.opus);
+        }
         self.consecutive_store_fails = 0;
-        if self.buffer.len() >= self.capacity {
+        if self.playout_mode == PlayoutMode::Fill && self.buffer.len() >= self.target_len {
             self.playout_mode = PlayoutMode::Drain;
+            self.ending = false;
+            self.frames_since_resize = 0;
         }
     }
 
+    /// Records a packet's delay and updates the target depth.
+    fn note_arrival(&mut self, seq: u16, arrival_us: i64) {
+        let ext_seq = if self.synced {
+            self.highest_seq + seq.wrapping_sub(self.highest_seq as u16) as i16 as i64
+        } else {
+            seq as i64
+        };
+        // Silence between bursts has no packets, so send times only line up within a burst
+        if !self.synced || arrival_us - self.last_arrival_us > BURST_GAP_US {
+            self.burst_min_transit = None;
+        }
+        if !self.synced || ext_seq > self.highest_seq {
+            self.highest_seq = ext_seq;
+            self.last_arrival_us = arrival_us;
+        }
+
+        let transit = arrival_us - ext_seq * FRAME_US;
+        let min_transit = match self.burst_min_transit {
+            Some(min) if min <= transit => min,
+            _ => transit,
+        };
+        self.burst_min_transit = Some(min_transit);
+        self.delays[self.delay_next] = transit - min_transit;
+        self.delay_next = (self.delay_next + 1) % DELAY_WINDOW;
+        self.delay_count = (self.delay_count + 1).min(DELAY_WINDOW);
+
+        let mut window = self.delays;
+        let window = &mut window[..self.delay_count];
+        let rank = (window.len() * DELAY_PERCENTILE / 100).min(window.len() - 1);
+        let (_, delay, _) = window.select_nth_unstable(rank);
+        let frames = 1 + ((*delay + FRAME_US - 1) / FRAME_US) as usize;
+        self.target_len = frames.clamp(MIN_DEPTH, MAX_DEPTH);
+    }
+
     pub fn fetch_packet(&mut self) -> PacketLookup {
         if self.playout_mode == PlayoutMode::Fill {
             return PacketLookup::Filling;
         }
+
+        self.frames_since_resize = self.frames_since_resize.saturating_add(1);
+        if self.frames_since_resize >= RESIZE_INTERVAL {
+            if self.buffer.len() > self.target_len + 1 {
+                // Deeper than needed: skip a frame
+                self.frames_since_resize = 0;
+                if let Some(Some(pkt)) = self.buffer.pop_front() {
+                    self.recycle(pkt.opus);
+                }
+                self.next_seq = self.next_seq.wrapping_add(1);
+            } else if !self.ending && self.buffer.len() + 2 <= self.target_len {
+                // Too shallow: conceal one frame without consuming a packet
+                self.frames_since_resize = 0;
+                return PacketLookup::MissedPacket;
+            }
+        }
+
         let out = match self.buffer.pop_front() {
             Some(Some(pkt)) => {
                 self.next_seq = self.next_seq.wrapping_add(1);
@@ -118,6 +286,7 @@ impl PlayoutBuffer {
             },
             Some(None) => {
                 self.next_seq = self.next_seq.wrapping_add(1);
+                self.lost += 1;
                 PacketLookup::MissedPacket
             },
             None => {
@@ -126,6 +295,7 @@ impl PlayoutBuffer {
         };
         if self.buffer.is_empty() {
             self.playout_mode = PlayoutMode::Fill;
+            self.ending = false;
         }
         out
     }
@@ -0,0 +1,35 @@
+//! Compact numeric handles for Discord speakers.
+//!
+//! Each Discord user that is heard gets an `i32` handle the first time one of
+//! their SSRCs is mapped. The handle -> (user id, display name) mapping is
+//! announced to Java once per mapping, so audio records only need to carry
+//! the handle. Handle 0 means "unknown speaker".
+
+use std::sync::atomic::{AtomicI32, Ordering};
+
+use dashmap::DashMap;
+
+pub const UNKNOWN_SPEAKER: i32 = 0;
+
+pub struct SpeakerRegistry {
+    handles: DashMap<u64, i32>,
+    next_handle: AtomicI32,
+}
+
+impl SpeakerRegistry {
+    pub fn new() -> SpeakerRegistry {
+        SpeakerRegistry {
+            handles: DashMap::new(),
+            next_handle: AtomicI32::new(UNKNOWN_SPEAKER + 1),
+        }
+    }
+
+    /// Returns the handle for a Discord user, assigning one if needed. Handles
+    /// are stable for the lifetime of the bot, across SSRC changes and restarts.
+    pub fn handle_for(&self, user_id: u64) -> i32 {
+        *self
+            .handles
+            .entry(user_id)
+            .or_insert_with(|| self.next_handle.fetch_add(1, Ordering::Relaxed))
+    }
+}
@@ -0,0 +1,167 @@
+//! Lock-free SSRC -> speaker handle table for the voice receive handler.
+//!
+//! VoiceTick runs at 50Hz for every bot on songbird's event task, so lookups
+//! and the stable speaking order only touch atomics: no locks, no allocation
+//! and nothing beyond a short linear probe per SSRC. Entries are written only
+//! from SpeakingStateUpdate, serialised by a writer lock the tick path never
+//! takes. Entries are never removed until the table is full; then the least
+//! recently heard SSRC is evicted and its slot reused.
+
+use std::sync::atomic::{AtomicI32, AtomicU64, Ordering};
+
+use parking_lot::Mutex;
+
+const CAPACITY: usize = 512;
+const _: () = assert!(CAPACITY.is_power_of_two());
+
+const EMPTY: u64 = 0;
+const TOMBSTONE: u64 = 1;
+/// Set on every live key so no SSRC encodes to `EMPTY` or `TOMBSTONE`.
+const OCCUPIED: u64 = 1 << 32;
+
+/// Order key for SSRCs that have no slot; they are delivered after the rest.
+pub const UNORDERED: u64 = u64::MAX;
+
+/// Ticks without audio after which a speaker's burst counts as over. Discord
+/// stops sending entirely after a few silence frames, while a single lost or
+/// late packet only leaves a one-tick gap.
+pub const END_OF_BURST_TICKS: u64 = 3;
+
+struct Slot {
+    key: AtomicU64,
+    handle: AtomicI32,
+    /// Tick the SSRC was mapped at; keeps fresh entries from being evicted
+    mapped_tick: AtomicU64,
+    /// Last tick this SSRC had audio in (0 = none yet)
+    last_tick: AtomicU64,
+    /// Order key of the SSRC's current run of consecutive ticks
+    streak: AtomicU64,
+}
+
+pub struct SsrcTable {
+    slots: Box<[Slot]>,
+    tick: AtomicU64,
+    next_streak: AtomicU64,
+    writer: Mutex<()>,
+}
+
+impl SsrcTable {
+    pub fn new() -> SsrcTable {
+        SsrcTable {
+            slots: (0..CAPACITY)
+                .map(|_| Slot {
+                    key: AtomicU64::new(EMPTY),
+                    handle: AtomicI32::new(0),
+                    mapped_tick: AtomicU64::new(0),
+                    last_tick: AtomicU64::new(0),
+                    streak: AtomicU64::new(0),
+                })
+                .collect(),
+            tick: AtomicU64::new(0),
+            next_streak: AtomicU64::new(0),
+            writer: Mutex::new(()),
+        }
+    }
+
+    #[inline]
+    fn key(ssrc: u32) -> u64 {
+        OCCUPIED | ssrc as u64
+    }
+
+    #[inline]
+    fn home(ssrc: u32) -> usize {
+        // SSRCs are random, but spread them anyway in case a server isn't
+        (ssrc.wrapping_mul(0x9E37_79B9) >> (32 - CAPACITY.trailing_zeros())) as usize
+    }
+
+    /// Finds the slot of a mapped SSRC.
+    pub fn find(&self, ssrc: u32) -> Option<usize> {
+        let key = Self::key(ssrc);
+        let mut index = Self::home(ssrc);
+        for _ in 0..CAPACITY {
+            match self.slots[index].key.load(Ordering::Acquire) {
+                EMPTY => return None,
+                k if k == key => return Some(index),
+                _ => index = (index + 1) & (CAPACITY - 1),
+            }
+        }
+        None
+    }
+
+    /// Speaker handle of a slot returned by `find`.
+    #[inline]
+    pub fn handle(&self, slot: usize) -> i32 {
+        self.slots[slot].handle.load(Ordering::Acquire)
+    }
+
+    pub fn contains(&self, ssrc: u32) -> bool {
+        self.find(ssrc).is_some()
+    }
+
+    /// Maps an SSRC to a speaker handle. Only called from SpeakingStateUpdate.
+    pub fn insert(&self, ssrc: u32, handle: i32) {
+        let _writer = self.writer.lock();
+        if let Some(slot) = self.find(ssrc) {
+            self.slots[slot].handle.store(handle, Ordering::Release);
+            return;
+        }
+        let index = self.free_slot(ssrc).unwrap_or_else(|| self.evict_least_recent());
+        let slot = &self.slots[index];
+        slot.handle.store(handle, Ordering::Relaxed);
+        slot.mapped_tick.store(self.tick.load(Ordering::Relaxed), Ordering::Relaxed);
+        slot.last_tick.store(0, Ordering::Relaxed);
+        // Publishing the key last makes the handle visible to readers that find it
+        slot.key.store(Self::key(ssrc), Ordering::Release);
+    }
+
+    /// First empty or tombstoned slot on the SSRC's probe path.
+    fn free_slot(&self, ssrc: u32) -> Option<usize> {
+        let mut index = Self::home(ssrc);
+        for _ in 0..CAPACITY {
+            let key = self.slots[index].key.load(Ordering::Relaxed);
+            if key == EMPTY || key == TOMBSTONE {
+                return Some(index);
+            }
+            index = (index + 1) & (CAPACITY - 1);
+        }
+        None
+    }
+
+    fn evict_least_recent(&self) -> usize {
+        let (index, _) = self
+            .slots
+            .iter()
+            .enumerate()
+            .map(|(i, s)| (i, s.last_tick.load(Ordering::Relaxed).max(s.mapped_tick.load(Ordering::Relaxed))))
+            .min_by_key(|&(_, tick)| tick)
+            .expect("SSRC table has slots");
+        tracing::warn!("SSRC table is full; evicting the least recently heard SSRC");
+        self.slots[index].key.store(TOMBSTONE, Ordering::Release);
+        index
+    }
+
+    /// Starts a VoiceTick and returns its number. Only the tick path calls this.
+    pub fn begin_tick(&self) -> u64 {
+        self.tick.fetch_add(1, Ordering::Relaxed) + 1
+    }
+
+    /// Returns the SSRC's position in the stable speaking order for this tick:
+    /// SSRCs that also spoke last tick keep their place, new ones go after.
+    pub fn order_key(&self, slot: usize, tick: u64) -> u64 {
+        let slot = &self.slots[slot];
+        let last = slot.last_tick.swap(tick, Ordering::Relaxed);
+        if last == 0 || last + 1 != tick {
+            let streak = self.next_streak.fetch_add(1, Ordering::Relaxed);
+            slot.streak.store(streak, Ordering::Relaxed);
+            return streak;
+        }
+        slot.streak.load(Ordering::Relaxed)
+    }
+
+    /// Whether the SSRC's burst ended at this tick, i.e. it had audio exactly
+    /// `END_OF_BURST_TICKS` ticks ago and none since. True once per burst.
+    pub fn burst_ended(&self, slot: usize, tick: u64) -> bool {
+        let last = self.slots[slot].last_tick.load(Ordering::Relaxed);
+        last != 0 && last + END_OF_BURST_TICKS == tick
+    }
+}
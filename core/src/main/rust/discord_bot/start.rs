@@ -25,9 +25,6 @@ impl super::DiscordBot {
             }
         };
 
-        // In case there are any packets left over
-        bot.discord_to_mc_buffer.received_audio_rx.drain();
-
 
         let channel_id = *bot.channel_id.lock();
         let channel_id = channel_id.ok_or_else(|| eyre!("No channel_id set for this bot instance"))?;
@@ -42,6 +39,7 @@ impl super::DiscordBot {
         let songbird = bot.songbird.clone();
         let guild_id = channel.guild_id;
         let player_to_discord_buffers = Arc::clone(&bot.player_to_discord_buffers);
+        let mic_ring = Arc::clone(&bot.mic_ring);
         let audio_shutdown = Arc::clone(&bot.audio_shutdown);
         audio_shutdown.store(false, Ordering::SeqCst);
         let bot_for_async = Arc::clone(&bot);
@@ -68,12 +66,15 @@ impl super::DiscordBot {
                     let handler = VoiceHandler {
                         vc_id: channel_id,
                         bot: Arc::clone(&bot_for_async),
-                        ssrc_username_map: Arc::new(std::sync::Mutex::new(std::collections::HashMap::new())),
-                        ssrc_user_id_map: Arc::new(std::sync::Mutex::new(std::collections::HashMap::new())),
-                        last_ssrc_order: Arc::new(std::sync::Mutex::new(std::collections::VecDeque::new())),
+                        ssrcs: Arc::new(super::ssrc_table::SsrcTable::new()),
+                        mixer: Arc::new(parking_lot::Mutex::new(super::discord_mix::DiscordMixer::new())),
                     };
                     call.add_global_event(CoreEvent::VoiceTick.into(), handler.clone());
                     call.add_global_event(CoreEvent::SpeakingStateUpdate.into(), handler);
+
+                    // The receive task takes its playout settings from the config at join time
+                    let config = call.config().clone().playout_adaptive_min(super::adaptive_playout_min());
+                    call.set_config(config);
                 }
 
                 // Two-stage join (mirrors Songbird::join): initiate while holding
@@ -99,7 +100,7 @@ impl super::DiscordBot {
                     tracing::warn!("Songbird call has no active connection after join; audio bridging will not work");
                 }
 
-                let input = create_playable_input(player_to_discord_buffers, audio_shutdown)?;
+                let input = create_playable_input(player_to_discord_buffers, mic_ring, audio_shutdown)?;
                 let (input, audio_source_uuid) = input;
                 *bot_for_async.audio_source_uuid.lock().unwrap() = Some(audio_source_uuid);
                 call.play_only_input(input);
@@ -89,6 +89,15 @@ pub struct Config {
     /// Defaults to 3 packets (thus capacity defaults to 8).
     pub playout_spike_length: u8,
 
+    #[cfg(all(feature = "driver", feature = "receive"))]
+    /// PATCH(voicechat-discord): enables adaptive playout. Each SSRC's playout
+    /// depth then follows its measured interarrival jitter, between this many
+    /// packets and [`Self::playout_buffer_length`], instead of always being
+    /// [`Self::playout_buffer_length`].
+    ///
+    /// Defaults to `None` (fixed depth).
+    pub playout_adaptive_min: Option<NonZeroU8>,
+
     #[cfg(feature = "gateway")]
     /// Configures the amount of time to wait for Discord to reply with connection information
     /// if [`Call::join`]/[`join_gateway`] are used.
@@ -217,6 +226,8 @@ impl Default for Config {
             playout_buffer_length: NonZeroU8::new(5).unwrap(),
             #[cfg(all(feature = "driver", feature = "receive"))]
             playout_spike_length: 3,
+            #[cfg(all(feature = "driver", feature = "receive"))]
+            playout_adaptive_min: None,
             #[cfg(feature = "gateway")]
             gateway_timeout: Some(Duration::from_secs(10).into()),
             #[cfg(feature = "driver")]
@@ -288,6 +299,15 @@ impl Config {
         self
     }
 
+    #[cfg(feature = "receive")]
+    /// PATCH(voicechat-discord): sets this `Config`'s lower bound for adaptive
+    /// playout depth, in packets, or disables adaptive playout with `None`.
+    #[must_use]
+    pub fn playout_adaptive_min(mut self, playout_adaptive_min: Option<NonZeroU8>) -> Self {
+        self.playout_adaptive_min = playout_adaptive_min;
+        self
+    }
+
     /// Sets this `Config`'s audio mixing channel count.
     #[must_use]
     pub fn mix_mode(mut self, mix_mode: MixMode) -> Self {
@@ -46,6 +46,12 @@ pub enum PacketLookup {
     Filling,
 }
 
+// PATCH(voicechat-discord): adaptive playout (see `Config::playout_adaptive_min`).
+// Depth in frames is 1 + JITTER_MULTIPLIER * jitter, rounded up.
+const JITTER_MULTIPLIER: f32 = 3.0;
+/// Arrival gaps longer than this (1s of samples) are pauses in speech, not jitter.
+const JITTER_GAP_SAMPLES: f32 = SAMPLE_RATE_RAW as f32;
+
 #[derive(Debug)]
 pub struct PlayoutBuffer {
     buffer: VecDeque<Option<StoredPacket>>,
@@ -53,17 +59,64 @@ pub struct PlayoutBuffer {
     next_seq: RtpSequence,
     current_timestamp: Option<RtpTimestamp>,
     consecutive_store_fails: usize,
+    // PATCH(voicechat-discord): packets buffered before playout starts. Always
+    // `playout_buffer_length` unless adaptive playout is enabled.
+    target_len: u8,
+    /// RFC 3550 interarrival jitter, in RTP timestamp units (48kHz samples).
+    jitter: f32,
+    last_arrival: Option<(Instant, RtpTimestamp)>,
 }
 
 impl PlayoutBuffer {
-    pub fn new(capacity: usize, next_seq: RtpSequence) -> Self {
+    pub fn new(capacity: usize, next_seq: RtpSequence, playout_len: u8) -> Self {
         Self {
             buffer: VecDeque::with_capacity(capacity),
             playout_mode: PlayoutMode::Fill,
             next_seq,
             current_timestamp: None,
             consecutive_store_fails: 0,
+            target_len: playout_len,
+            jitter: 0.0,
+            last_arrival: None,
+        }
+    }
+
+    /// PATCH(voicechat-discord): current playout depth, in packets.
+    pub fn playout_len(&self) -> u8 {
+        self.target_len
+    }
+
+    /// Folds one arrival into the interarrival jitter estimate (RFC 3550 A.8).
+    fn update_jitter(&mut self, timestamp: RtpTimestamp) {
+        let now = Instant::now();
+        if let Some((last_at, last_ts)) = self.last_arrival {
+            let arrival = now.duration_since(last_at).as_secs_f32() * SAMPLE_RATE_RAW as f32;
+            let sent = (timestamp - last_ts).0 as i32 as f32;
+            if arrival < JITTER_GAP_SAMPLES {
+                let deviation = (arrival - sent).abs();
+                self.jitter += (deviation - self.jitter) / 16.0;
+            }
         }
+        self.last_arrival = Some((now, timestamp));
+    }
+
+    /// Picks the playout depth for the next burst from the jitter estimate.
+    /// Depth grows at once but shrinks one packet per burst, so a short calm
+    /// spell can't leave the buffer too shallow for the next spike.
+    fn retarget(&mut self, config: &Config) {
+        let Some(min) = config.playout_adaptive_min else {
+            return;
+        };
+        let max = config.playout_buffer_length.get();
+        let jitter_frames = (JITTER_MULTIPLIER * self.jitter / MONO_FRAME_SIZE as f32)
+            .ceil()
+            .min(f32::from(max)) as u8;
+        let wanted = jitter_frames.saturating_add(1).clamp(min.get().min(max), max);
+        self.target_len = if wanted < self.target_len {
+            self.target_len - 1
+        } else {
+            wanted
+        };
     }
 
     /// Slot a received RTP packet into the correct location in the playout buffer using
@@ -74,8 +127,12 @@ impl PlayoutBuffer {
         let rtp = RtpPacket::new(&packet.packet)
             .expect("FATAL: earlier valid packet now invalid (store)");
 
+        if config.playout_adaptive_min.is_some() {
+            self.update_jitter(rtp.get_timestamp().0);
+        }
+
         if self.current_timestamp.is_none() {
-            self.current_timestamp = Some(reset_timeout(&rtp, config));
+            self.current_timestamp = Some(reset_timeout(&rtp, self.target_len));
         }
 
         // compute index by taking wrapping difference between both seq numbers.
@@ -94,6 +151,10 @@ impl PlayoutBuffer {
 
         if desired_index < 0 {
             trace!("Missed packet arrived late, discarding from playout.");
+            // PATCH(voicechat-discord): the adaptive depth was too shallow for this one.
+            if config.playout_adaptive_min.is_some() {
+                self.target_len = self.target_len.saturating_add(1).min(config.playout_buffer_length.get());
+            }
         } else if !handling_desync && desired_index >= 64 {
             trace!(
                 "Packet arrived beyond playout max length({}): wanted slot {desired_index}.\
@@ -120,7 +181,7 @@ impl PlayoutBuffer {
             self.consecutive_store_fails = 0;
         }
 
-        if self.buffer.len() >= usize::from(config.playout_buffer_length.get()) {
+        if self.buffer.len() >= usize::from(self.target_len) {
             self.playout_mode = PlayoutMode::Drain;
         }
     }
@@ -190,6 +251,7 @@ impl PlayoutBuffer {
         if self.buffer.is_empty() {
             self.playout_mode = PlayoutMode::Fill;
             self.current_timestamp = None;
+            self.retarget(config);
         }
 
         if let Some(ts) = self.current_timestamp.as_mut() {
@@ -205,7 +267,7 @@ impl PlayoutBuffer {
 }
 
 #[inline]
-fn reset_timeout(packet: &RtpPacket<'_>, config: &Config) -> RtpTimestamp {
-    let t_shift = MONO_FRAME_SIZE * usize::from(config.playout_buffer_length.get());
+fn reset_timeout(packet: &RtpPacket<'_>, playout_len: u8) -> RtpTimestamp {
+    let t_shift = MONO_FRAME_SIZE * usize::from(playout_len);
     (packet.get_timestamp() + (t_shift as u32)).0
 }
@@ -32,7 +32,11 @@ impl SsrcState {
         };
 
         Self {
-            playout_buffer: PlayoutBuffer::new(usize::from(playout_capacity), pkt.get_sequence().0),
+            playout_buffer: PlayoutBuffer::new(
+                usize::from(playout_capacity),
+                pkt.get_sequence().0,
+                config.playout_buffer_length.get(),
+            ),
             crypto_mode,
             decoder: OpusDecoder::new(sample_rate.into(), channels.into())
                 .expect("Failed to create new Opus decoder for source."),
@@ -78,6 +82,7 @@ impl SsrcState {
         let mut out = VoiceData {
             packet: None,
             decoded_voice: None,
+            playout_length: self.playout_buffer.playout_len(),
         };
 
         let should_decode = config.decode_mode.should_decode();
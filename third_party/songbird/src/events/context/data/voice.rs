@@ -40,4 +40,10 @@ pub struct VoiceData {
     /// [`DecodeConfig::decode_channels`]: crate::driver::DecodeConfig::channels
     /// [`DecodeConfig::sample_rate`]: crate::driver::DecodeConfig::sample_rate
     pub decoded_voice: Option<Vec<i16>>,
+    /// PATCH(voicechat-discord): packets this user's audio is currently
+    /// buffered before playout, i.e. the receive delay in 20ms frames. Fixed
+    /// at [`Config::playout_buffer_length`] unless adaptive playout is enabled.
+    ///
+    /// [`Config::playout_buffer_length`]: crate::Config::playout_buffer_length
+    pub playout_length: u8,
 }